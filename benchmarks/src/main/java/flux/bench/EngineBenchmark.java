@@ -0,0 +1,86 @@
+package flux.bench;
+
+import ast.Stmt;
+import engine.CompiledScript;
+import engine.ContextPool;
+import engine.FluxContext;
+import engine.FluxEngine;
+import interpreter.Interpreter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import lexer.Lexer;
+import optimizer.Optimizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import parser.Parser;
+import resolver.Resolver;
+
+// Runs per second of a short script, as an embedding service would run it
+// per request: a new Interpreter each time, a new FluxContext of a compiled
+// script each time, or a context taken from and returned to a ContextPool.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+
+    private static final String SCRIPT =
+        "fun clamp(v, lo, hi) {\n"
+        + "    if (v < lo) { return lo }\n"
+        + "    if (v > hi) { return hi }\n"
+        + "    return v\n"
+        + "}\n"
+        + "total = 0\n"
+        + "for i = 1 to 20 { total = total + clamp(i * price, 5, 50) }\n"
+        + "discount = total * 0.1\n"
+        + "label = \"order\"\n"
+        + "result = total - discount\n";
+
+    private List<Stmt> statements;
+    private CompiledScript script;
+    private ContextPool pool;
+
+    @Setup
+    public void setup() {
+        statements = Optimizer.optimize(new Parser(new Lexer(SCRIPT)).parse());
+        script = new FluxEngine().compile(SCRIPT);
+        pool = script.newPool(16);
+    }
+
+    @Benchmark
+    public Object interpreter() {
+        Interpreter interpreter = new Interpreter();
+        interpreter.getGlobals().define("price", 2.5);
+        new Resolver(interpreter.getGlobals()).resolve(statements);
+        interpreter.interpret(statements);
+        return interpreter;
+    }
+
+    @Benchmark
+    public Object newContext() {
+        FluxContext context = script.newContext();
+        context.set("price", 2.5);
+        script.run(context);
+        return context.get("result");
+    }
+
+    @Benchmark
+    public Object pooledContext() {
+        FluxContext context = pool.acquire();
+        context.set("price", 2.5);
+        script.run(context);
+        Object result = context.get("result");
+        pool.release(context);
+        return result;
+    }
+}
@@ -0,0 +1,91 @@
+package flux.bench;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import lexer.Lexer;
+import lexer.MappedSource;
+import lexer.Token;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Lexes a large generated script from disk, once read into a String the
+// way the CLI used to and once through a memory-mapped MappedSource.
+// Run with -prof gc to compare the bytes allocated per token.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class LexerBenchmark {
+
+    @Param({"50"})
+    public int megabytes;
+
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        file = Files.createTempFile("flux-lexer-", ".flux");
+        long target = megabytes * 1024L * 1024L;
+        long written = 0;
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+            for (int i = 0; written < target; i++) {
+                String chunk = chunk(i);
+                out.write(chunk);
+                written += chunk.length();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public List<Token> readString() throws IOException {
+        return new Lexer(Files.readString(file)).scanTokens();
+    }
+
+    @Benchmark
+    public List<Token> mapped() throws IOException {
+        return new Lexer(MappedSource.open(file)).scanTokens();
+    }
+
+    // A function, a class and a loop; names repeat every 100 chunks like
+    // the helpers of a generated script would
+    private static String chunk(int i) {
+        int n = i % 100;
+        return "# generated block " + i + "\n"
+            + "fun step" + n + "(a, b) {\n"
+            + "    total = a * 2.5 + b - " + i + "\n"
+            + "    if (total >= 100 and not (b == 0)) { return total % 7 }\n"
+            + "    return [total, \"step\", a + b]\n"
+            + "}\n"
+            + "class Point" + n + " {\n"
+            + "    x\n    y\n"
+            + "    fun init() { this.x = 0 this.y = 0 }\n"
+            + "}\n"
+            + "for k = 1 to 10 {\n"
+            + "    p = Point" + n + "()\n"
+            + "    p.x = step" + n + "(k, 3.75)\n"
+            + "    print \"value\", p.x, {\"key\": k}\n"
+            + "}\n";
+    }
+}
@@ -0,0 +1,59 @@
+package flux.bench;
+
+import engine.CompiledScript;
+import engine.FluxContext;
+import engine.FluxEngine;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// A CPU-bound callback over an array, with the sequential method and its
+// fork-join version. With enough cores parMap and parReduce should take
+// about 1/N of the time of map and reduce; the pool size is set with
+// -Djava.util.concurrent.ForkJoinPool.common.parallelism=N.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelBenchmark {
+
+    @Param({"map", "parMap", "reduce", "parReduce"})
+    public String method;
+
+    private static final String PREFIX =
+        "fun fib(n) {\n"
+        + "    if (n < 2) { return n }\n"
+        + "    return fib(n - 1) + fib(n - 2)\n"
+        + "}\n"
+        + "data = []\n"
+        + "for i = 1 to 256 { data.push(15) }\n";
+
+    private CompiledScript script;
+    private FluxContext context;
+
+    @Setup
+    public void setup() {
+        String call = method.toLowerCase().endsWith("map")
+            ? "result = data." + method + "(fib).len()\n"
+            : "result = data." + method + "(fun(a, b) { return a + b + fib(15) * 0 }, 0)\n";
+        script = new FluxEngine().compile(PREFIX + call);
+        context = script.newContext();
+    }
+
+    @Benchmark
+    public Object run() {
+        script.run(context);
+        return context.get("result");
+    }
+}
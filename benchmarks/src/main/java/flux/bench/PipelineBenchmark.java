@@ -0,0 +1,105 @@
+package flux.bench;
+
+import ast.Stmt;
+import compiler.Compiler;
+import compiler.Prototype;
+import interpreter.Interpreter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import lexer.Lexer;
+import lexer.Token;
+import optimizer.Optimizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import parser.Parser;
+import resolver.Resolver;
+import vm.VM;
+
+// Times each stage of the Flux pipeline on the bundled workload scripts.
+// Every stage gets the output of the previous one prepared in setup, so
+// lex, parse and the two execution engines can be compared in isolation.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmark {
+
+    @Param({"fib", "nested_loops", "for_loops", "strings", "oop", "churn", "dispatch", "loop_break"})
+    public String workload;
+
+    private String source;
+    private List<Token> tokens;
+    private List<Stmt> statements;
+    private PrintStream stdout;
+
+    @Setup
+    public void setup() throws IOException {
+        source = load(workload + ".flux");
+        tokens = new Lexer(source).scanTokens();
+        statements = Optimizer.optimize(new Parser(tokens).parse());
+
+        // Scripts print their results; keep that out of the measurement
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Token> lex() {
+        return new Lexer(source).scanTokens();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Stmt> parse() {
+        return new Parser(tokens).parse();
+    }
+
+    @Benchmark
+    public Interpreter interpret() {
+        Interpreter interpreter = new Interpreter();
+        new Resolver(interpreter.getGlobals()).resolve(statements);
+        interpreter.interpret(statements);
+        return interpreter;
+    }
+
+    @Benchmark
+    public VM vm() {
+        VM vm = new VM();
+        new Resolver(vm.getGlobals()).resolve(statements);
+        Prototype script = Compiler.compile(statements);
+        vm.run(script);
+        return vm;
+    }
+
+    private static String load(String name) throws IOException {
+        try (InputStream in = PipelineBenchmark.class.getResourceAsStream("/" + name)) {
+            if (in == null) {
+                throw new IOException("Missing workload: " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package flux.bench;
+
+import engine.CompiledScript;
+import engine.FluxContext;
+import engine.FluxEngine;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// An array used as a queue: fill it with `size` elements, then drain it
+// from the front (shift), or fill it from the front (unshift) and drain it
+// from the back. Time per run should grow linearly with size; it grew
+// quadratically while removing or inserting at the front moved every
+// other element.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueBenchmark {
+
+    @Param({"shift", "unshift"})
+    public String method;
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private CompiledScript script;
+    private FluxContext context;
+
+    @Setup
+    public void setup() {
+        String fill = method.equals("shift") ? "push" : "unshift";
+        String drain = method.equals("shift") ? "shift" : "pop";
+        script = new FluxEngine().compile(
+            "queue = []\n"
+            + "for i = 1 to " + size + " { queue." + fill + "(i) }\n"
+            + "result = 0\n"
+            + "while queue.len() > 0 { result = result + queue." + drain + "() }\n");
+        context = script.newContext();
+    }
+
+    @Benchmark
+    public Object run() {
+        script.run(context);
+        return context.get("result");
+    }
+}
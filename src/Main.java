@@ -1,17 +1,42 @@
 import ast.AstPrinter;
 import ast.Stmt;
+import cache.ScriptCache;
+import compiler.Compiler;
 import interpreter.Interpreter;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Scanner;
 import lexer.Lexer;
+import lexer.MappedSource;
 import lexer.Token;
+import optimizer.Optimizer;
 import parser.Parser;
+import resolver.Resolver;
+import runtime.Limits;
+import vm.VM;
 
 public class Main {
 
     public static void main(String[] args) throws Exception {
+        // Scripts run on a thread whose stack fits Limits.MAX_CALL_DEPTH
+        // nested calls in the tree-walking interpreter
+        Throwable[] failure = new Throwable[1];
+        Thread flux = new Thread(null, () -> {
+            try {
+                run(args);
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        }, "main", Limits.STACK_SIZE);
+
+        flux.start();
+        flux.join();
+
+        if (failure[0] instanceof Exception) throw (Exception) failure[0];
+        if (failure[0] instanceof Error) throw (Error) failure[0];
+    }
+
+    private static void run(String[] args) throws Exception {
 
         // ===== REPL MODE =====
         if (args.length >= 1 && args[0].equals("repl")) {
@@ -23,9 +48,11 @@ public class Main {
         if (args.length < 2) {
             System.out.println("Flux CLI");
             System.out.println("Usage:");
-            System.out.println("  .\\flux run <file.flux>");
-            System.out.println("  .\\flux ast <file.flux>");
-            System.out.println("  .\\flux trace <file.flux>");
+            System.out.println("  .\\flux run <file.flux> [--stream]");
+            System.out.println("  .\\flux vm <file.flux>");
+            System.out.println("  .\\flux spec <file.flux> [--stream]");
+            System.out.println("  .\\flux ast <file.flux> [--optimized]");
+            System.out.println("  .\\flux trace <file.flux> [--stream]");
             System.out.println("  .\\flux env <file.flux>");
             System.out.println("  .\\flux repl");
             return;
@@ -35,34 +62,65 @@ public class Main {
         String filePath = args[1];
 
         Path path = Path.of(filePath).toAbsolutePath();
-        String source = Files.readString(path);
 
-        Lexer lexer = new Lexer(source);
-        List<Token> tokens = lexer.scanTokens();
+        if (args.length > 2 && args[2].equals("--stream")) {
+            stream(command, new Parser(new Lexer(MappedSource.open(path))));
+            return;
+        }
 
-        Parser parser = new Parser(tokens);
-        List<Stmt> statements = parser.parse();
+        // An unchanged script loads its optimized tree from the cache; `ast`
+        // always parses, since it prints the tree as written
+        ScriptCache.Key key = command.equals("ast") ? null : ScriptCache.key(path);
+        List<Stmt> statements = key == null ? null : ScriptCache.load(key);
+        List<Stmt> parsed = null;
+
+        if (statements == null) {
+            Lexer lexer = new Lexer(MappedSource.open(path));
+            List<Token> tokens = lexer.scanTokens();
+
+            Parser parser = new Parser(tokens);
+            parsed = parser.parse();
+            statements = Optimizer.optimize(parsed);
+            if (key != null) ScriptCache.store(key, statements);
+        }
 
         try {
             switch (command) {
 
                 case "run" -> {
                     Interpreter interpreter = new Interpreter(false);
+                    new Resolver(interpreter.getGlobals()).resolve(statements);
                     interpreter.interpret(statements);
                 }
 
+                case "spec" -> {
+                    Interpreter interpreter = new Interpreter(false, true);
+                    new Resolver(interpreter.getGlobals()).resolve(statements);
+                    interpreter.interpret(statements);
+                }
+
+                case "vm" -> {
+                    VM vm = new VM();
+                    new Resolver(vm.getGlobals()).resolve(statements);
+                    vm.run(Compiler.compile(statements));
+                }
+
                 case "trace" -> {
                     Interpreter interpreter = new Interpreter(true);
+                    new Resolver(interpreter.getGlobals()).resolve(statements);
                     interpreter.interpret(statements);
                 }
 
                 case "ast" -> {
+                    // The tree as written, or as the engines run it with --optimized
+                    boolean optimized = args.length > 2 && args[2].equals("--optimized");
                     AstPrinter printer = new AstPrinter();
-                    printer.print(statements);
+                    printer.print(optimized ? statements : parsed);
                 }
 
                 case "env" -> {
                     Interpreter interpreter = new Interpreter(false);
+                    new Resolver(interpreter.getGlobals()).resolve(statements);
                     try {
                         interpreter.interpret(statements);
                     } catch (runtime.ExitSignal e) {
@@ -80,12 +138,46 @@ public class Main {
         }
     }
 
+    // ===== STREAMING MODE =====
+    // Parses and runs one top-level statement at a time straight off the
+    // lexer, so output starts at once and memory is bounded by the largest
+    // top-level statement. A syntax error stops the script only after the
+    // statements before it have run.
+    private static void stream(String command, Parser parser) {
+        Interpreter interpreter = switch (command) {
+            case "run" -> new Interpreter(false);
+            case "spec" -> new Interpreter(false, true);
+            case "trace" -> new Interpreter(true);
+            default -> null;
+        };
+        if (interpreter == null) {
+            System.out.println("--stream works with run, spec and trace.");
+            return;
+        }
+
+        Resolver resolver = new Resolver(interpreter.getGlobals());
+        try {
+            Stmt stmt;
+            while ((stmt = parser.parseNext()) != null) {
+                List<Stmt> statements = Optimizer.optimize(List.of(stmt));
+                resolver.resolve(statements);
+                if (!interpreter.interpretNext(statements)) {
+                    break; // top-level return
+                }
+            }
+            interpreter.finish();
+        } catch (runtime.ExitSignal e) {
+            // clean exit
+        }
+    }
+
     // ===== REPL IMPLEMENTATION =====
     private static void startRepl() {
         System.out.println("Flux REPL");
         System.out.println("Type 'exit' to quit.");
 
         Interpreter interpreter = new Interpreter(false);
+        Resolver resolver = new Resolver(interpreter.getGlobals());
         Scanner scanner = new Scanner(System.in);
 
         while (true) {
@@ -99,14 +191,22 @@ public class Main {
                 Lexer lexer = new Lexer(line);
                 List<Token> tokens = lexer.scanTokens();
                 Parser parser = new Parser(tokens);
-                List<Stmt> statements = parser.parse();
-                interpreter.interpret(statements);
+                List<Stmt> statements = Optimizer.optimize(parser.parse());
+                resolver.resolve(statements);
+                interpreter.interpretNext(statements);
             } catch (runtime.ExitSignal e) {
                 System.out.println("Exiting REPL.");
-                break;
+                return;
             } catch (RuntimeException e) {
                 System.err.println(e.getMessage());
             }
         }
+
+        // End of input: let the tasks still running finish
+        try {
+            interpreter.finish();
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+        }
     }
 }
@@ -24,12 +24,12 @@ public class AstPrinter {
     else if (stmt instanceof Stmt.Function) {
     Stmt.Function fn = (Stmt.Function) stmt;
 
-    System.out.println(indent + "Function " + fn.name.lexeme);
+    System.out.println(indent + "Function " + fn.name.lexeme());
 
     if (!fn.params.isEmpty()) {
         System.out.print(indent + "├─ Params: ");
         for (int i = 0; i < fn.params.size(); i++) {
-            System.out.print(fn.params.get(i).lexeme);
+            System.out.print(fn.params.get(i).lexeme());
             if (i < fn.params.size() - 1) System.out.print(", ");
         }
         System.out.println();
@@ -48,7 +48,7 @@ public class AstPrinter {
     }
     else if (stmt instanceof Stmt.Assignment) {
         Stmt.Assignment a = (Stmt.Assignment) stmt;
-        System.out.println(indent + "Assignment " + a.name.lexeme);
+        System.out.println(indent + "Assignment " + a.name.lexeme());
         printExpr(a.value, indent + "│  ");
     }
     else if (stmt instanceof Stmt.Return) {
@@ -93,6 +93,33 @@ public class AstPrinter {
             printStmt(s, indent + "   ");
         }
     }
+    else if (stmt instanceof Stmt.For) {
+        Stmt.For f = (Stmt.For) stmt;
+        System.out.println(indent + "For " + f.name.lexeme());
+
+        System.out.println(indent + "├─ From");
+        printExpr(f.start, indent + "│  ");
+
+        System.out.println(indent + "├─ To");
+        printExpr(f.end, indent + "│  ");
+
+        System.out.println(indent + "└─ Body");
+        for (Stmt s : f.body) {
+            printStmt(s, indent + "   ");
+        }
+    }
+    else if (stmt instanceof Stmt.ForIn) {
+        Stmt.ForIn f = (Stmt.ForIn) stmt;
+        System.out.println(indent + "For " + f.name.lexeme());
+
+        System.out.println(indent + "├─ In");
+        printExpr(f.iterable, indent + "│  ");
+
+        System.out.println(indent + "└─ Body");
+        for (Stmt s : f.body) {
+            printStmt(s, indent + "   ");
+        }
+    }
 }
 
     private void printExpr(Expr expr, String indent) {
@@ -101,7 +128,7 @@ public class AstPrinter {
     }
     else if (expr instanceof Expr.Variable) {
         System.out.println(indent + "Variable " +
-            ((Expr.Variable) expr).name.lexeme);
+            ((Expr.Variable) expr).name.lexeme());
     }
     else if (expr instanceof Expr.Call) {
     Expr.Call call = (Expr.Call) expr;
@@ -117,15 +144,23 @@ public class AstPrinter {
         }
     }
 }
+    else if (expr instanceof Expr.Spawn) {
+        System.out.println(indent + "Spawn");
+        printExpr(((Expr.Spawn) expr).call, indent + "└─ ");
+    }
+    else if (expr instanceof Expr.Await) {
+        System.out.println(indent + "Await");
+        printExpr(((Expr.Await) expr).task, indent + "└─ ");
+    }
     else if (expr instanceof Expr.Get) {
     Expr.Get get = (Expr.Get) expr;
     System.out.println(indent + "Get");
     printExpr(get.object, indent + "├─ ");
-    System.out.println(indent + "└─ " + get.name.lexeme);
+    System.out.println(indent + "└─ " + get.name.lexeme());
 }
     else if (expr instanceof Expr.Binary) {
         Expr.Binary b = (Expr.Binary) expr;
-        System.out.println(indent + "Binary " + b.operator.lexeme);
+        System.out.println(indent + "Binary " + b.operator.lexeme());
         printExpr(b.left, indent + "├─ ");
         printExpr(b.right, indent + "└─ ");
     }
@@ -0,0 +1,565 @@
+package ast;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lexer.Token;
+import lexer.TokenType;
+
+/**
+ * Compact binary form of a syntax tree, used by the script cache.
+ *
+ * Each node is a one-byte tag followed by its children. Counts, lines and
+ * token types are varints. Every distinct string (names, operators and
+ * string literals) is written once; later uses refer to it by index.
+ * Only what the parser produces is stored: slots, layouts and the other
+ * fields the resolver fills in are recomputed after loading, because they
+ * depend on the environment the script runs in.
+ *
+ * Bump VERSION whenever a node, a tag or TokenType changes.
+ */
+public final class AstSerializer {
+
+    public static final int VERSION = 3;
+
+    // Statements
+    private static final int PRINT = 1;
+    private static final int EXIT = 2;
+    private static final int BLOCK = 3;
+    private static final int EXPRESSION = 4;
+    private static final int RETURN = 5;
+    private static final int CLASS = 6;
+    private static final int ASSIGNMENT = 7;
+    private static final int BREAK = 8;
+    private static final int CONTINUE = 9;
+    private static final int IF = 10;
+    private static final int WHILE = 11;
+    private static final int FOR = 12;
+    private static final int FUNCTION = 13;
+    private static final int FOR_IN = 14;
+
+    // Expressions (0 stands for a missing one)
+    private static final int NONE = 0;
+    private static final int BINARY = 20;
+    private static final int GET = 21;
+    private static final int SET = 22;
+    private static final int THIS = 23;
+    private static final int ARRAY = 24;
+    private static final int MAP = 25;
+    private static final int INDEX = 26;
+    private static final int LAMBDA = 27;
+    private static final int LOGICAL = 28;
+    private static final int LITERAL = 29;
+    private static final int VARIABLE = 30;
+    private static final int CALL = 31;
+    private static final int SPAWN = 32;
+    private static final int AWAIT = 33;
+
+    // Literal values
+    private static final int NULL = 0;
+    private static final int TRUE = 1;
+    private static final int FALSE = 2;
+    private static final int NUMBER = 3;
+    private static final int STRING = 4;
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    public static void write(List<Stmt> statements, DataOutput out) throws IOException {
+        new Writer(out).statements(statements);
+    }
+
+    public static List<Stmt> read(DataInput in) throws IOException {
+        return new Reader(in).statements();
+    }
+
+    // ===================== WRITING =====================
+
+    private static final class Writer {
+        private final DataOutput out;
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        Writer(DataOutput out) {
+            this.out = out;
+        }
+
+        void statements(List<Stmt> statements) throws IOException {
+            varint(statements.size());
+            for (Stmt stmt : statements) {
+                statement(stmt);
+            }
+        }
+
+        void statement(Stmt stmt) throws IOException {
+
+            if (stmt instanceof Stmt.Print) {
+                out.writeByte(PRINT);
+                expressions(((Stmt.Print) stmt).expressions);
+            }
+
+            else if (stmt instanceof Stmt.Exit) {
+                out.writeByte(EXIT);
+            }
+
+            else if (stmt instanceof Stmt.Block) {
+                out.writeByte(BLOCK);
+                statements(((Stmt.Block) stmt).statements);
+            }
+
+            else if (stmt instanceof Stmt.Expression) {
+                out.writeByte(EXPRESSION);
+                expression(((Stmt.Expression) stmt).expression);
+            }
+
+            else if (stmt instanceof Stmt.Return) {
+                out.writeByte(RETURN);
+                expression(((Stmt.Return) stmt).value);
+            }
+
+            else if (stmt instanceof Stmt.Class) {
+                Stmt.Class cls = (Stmt.Class) stmt;
+                out.writeByte(CLASS);
+                token(cls.name);
+                tokens(cls.fields);
+                varint(cls.methods.size());
+                for (Stmt.Function method : cls.methods) {
+                    function(method);
+                }
+            }
+
+            else if (stmt instanceof Stmt.Assignment) {
+                Stmt.Assignment assign = (Stmt.Assignment) stmt;
+                out.writeByte(ASSIGNMENT);
+                token(assign.name);
+                expression(assign.value);
+            }
+
+            else if (stmt instanceof Stmt.Break) {
+                out.writeByte(BREAK);
+            }
+
+            else if (stmt instanceof Stmt.Continue) {
+                out.writeByte(CONTINUE);
+            }
+
+            else if (stmt instanceof Stmt.If) {
+                Stmt.If ifStmt = (Stmt.If) stmt;
+                out.writeByte(IF);
+                expression(ifStmt.condition);
+                statements(ifStmt.thenBody);
+                out.writeBoolean(ifStmt.elseBody != null);
+                if (ifStmt.elseBody != null) statements(ifStmt.elseBody);
+            }
+
+            else if (stmt instanceof Stmt.While) {
+                Stmt.While whileStmt = (Stmt.While) stmt;
+                out.writeByte(WHILE);
+                expression(whileStmt.condition);
+                statements(whileStmt.body);
+            }
+
+            else if (stmt instanceof Stmt.For) {
+                Stmt.For forStmt = (Stmt.For) stmt;
+                out.writeByte(FOR);
+                token(forStmt.name);
+                expression(forStmt.start);
+                expression(forStmt.end);
+                statements(forStmt.body);
+            }
+
+            else if (stmt instanceof Stmt.ForIn) {
+                Stmt.ForIn forIn = (Stmt.ForIn) stmt;
+                out.writeByte(FOR_IN);
+                token(forIn.name);
+                expression(forIn.iterable);
+                statements(forIn.body);
+            }
+
+            else if (stmt instanceof Stmt.Function) {
+                out.writeByte(FUNCTION);
+                function((Stmt.Function) stmt);
+            }
+
+            else {
+                throw new IllegalArgumentException("Cannot serialize " + stmt.getClass().getSimpleName());
+            }
+        }
+
+        void function(Stmt.Function fn) throws IOException {
+            token(fn.name);
+            tokens(fn.params);
+            statements(fn.body);
+        }
+
+        void expression(Expr expr) throws IOException {
+
+            if (expr == null) {
+                out.writeByte(NONE);
+            }
+
+            else if (expr instanceof Expr.Binary) {
+                Expr.Binary binary = (Expr.Binary) expr;
+                out.writeByte(BINARY);
+                expression(binary.left);
+                token(binary.operator);
+                expression(binary.right);
+            }
+
+            else if (expr instanceof Expr.Get) {
+                Expr.Get get = (Expr.Get) expr;
+                out.writeByte(GET);
+                expression(get.object);
+                token(get.name);
+            }
+
+            else if (expr instanceof Expr.Set) {
+                Expr.Set set = (Expr.Set) expr;
+                out.writeByte(SET);
+                expression(set.object);
+                token(set.name);
+                expression(set.value);
+            }
+
+            else if (expr instanceof Expr.This) {
+                out.writeByte(THIS);
+                token(((Expr.This) expr).keyword);
+            }
+
+            else if (expr instanceof Expr.Array) {
+                out.writeByte(ARRAY);
+                expressions(((Expr.Array) expr).elements);
+            }
+
+            else if (expr instanceof Expr.Map) {
+                Expr.Map map = (Expr.Map) expr;
+                out.writeByte(MAP);
+                expressions(map.keys);
+                expressions(map.values);
+            }
+
+            else if (expr instanceof Expr.Index) {
+                Expr.Index index = (Expr.Index) expr;
+                out.writeByte(INDEX);
+                expression(index.array);
+                expression(index.index);
+            }
+
+            else if (expr instanceof Expr.Lambda) {
+                Expr.Lambda lambda = (Expr.Lambda) expr;
+                out.writeByte(LAMBDA);
+                tokens(lambda.params);
+                statements(lambda.body);
+            }
+
+            else if (expr instanceof Expr.Logical) {
+                Expr.Logical logical = (Expr.Logical) expr;
+                out.writeByte(LOGICAL);
+                expression(logical.left);
+                token(logical.operator);
+                expression(logical.right);
+            }
+
+            else if (expr instanceof Expr.Literal) {
+                out.writeByte(LITERAL);
+                literal(((Expr.Literal) expr).value);
+            }
+
+            else if (expr instanceof Expr.Variable) {
+                out.writeByte(VARIABLE);
+                token(((Expr.Variable) expr).name);
+            }
+
+            else if (expr instanceof Expr.Call) {
+                Expr.Call call = (Expr.Call) expr;
+                out.writeByte(CALL);
+                expression(call.callee);
+                expressions(call.arguments);
+            }
+
+            else if (expr instanceof Expr.Spawn) {
+                out.writeByte(SPAWN);
+                expression(((Expr.Spawn) expr).call);
+            }
+
+            else if (expr instanceof Expr.Await) {
+                out.writeByte(AWAIT);
+                expression(((Expr.Await) expr).task);
+            }
+
+            else {
+                throw new IllegalArgumentException("Cannot serialize " + expr.getClass().getSimpleName());
+            }
+        }
+
+        void expressions(List<Expr> exprs) throws IOException {
+            varint(exprs.size());
+            for (Expr expr : exprs) {
+                expression(expr);
+            }
+        }
+
+        void literal(Object value) throws IOException {
+            if (value == null) {
+                out.writeByte(NULL);
+            } else if (value instanceof Boolean) {
+                out.writeByte((boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Double) {
+                out.writeByte(NUMBER);
+                out.writeDouble((double) value);
+            } else if (value instanceof String) {
+                out.writeByte(STRING);
+                string((String) value);
+            } else {
+                throw new IllegalArgumentException("Cannot serialize literal " + value);
+            }
+        }
+
+        void token(Token token) throws IOException {
+            varint(token.type.ordinal());
+            string(token.lexeme());
+            varint(token.line);
+        }
+
+        void tokens(List<Token> tokens) throws IOException {
+            varint(tokens.size());
+            for (Token token : tokens) {
+                token(token);
+            }
+        }
+
+        // Index into the string table; a new index is followed by the string itself
+        void string(String value) throws IOException {
+            Integer index = strings.get(value);
+            if (index != null) {
+                varint(index);
+                return;
+            }
+            varint(strings.size());
+            strings.put(value, strings.size());
+            // Not writeUTF(): string literals may be longer than 64K
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length);
+            out.write(bytes);
+        }
+
+        void varint(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                out.writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte(value);
+        }
+    }
+
+    // ===================== READING =====================
+
+    private static final class Reader {
+        private final DataInput in;
+        private final List<String> strings = new ArrayList<>();
+
+        Reader(DataInput in) {
+            this.in = in;
+        }
+
+        List<Stmt> statements() throws IOException {
+            int count = varint();
+            List<Stmt> statements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                statements.add(statement());
+            }
+            return statements;
+        }
+
+        Stmt statement() throws IOException {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case PRINT:
+                    return new Stmt.Print(expressions());
+                case EXIT:
+                    return new Stmt.Exit();
+                case BLOCK:
+                    return new Stmt.Block(statements());
+                case EXPRESSION:
+                    return new Stmt.Expression(expression());
+                case RETURN:
+                    return new Stmt.Return(expression());
+                case CLASS: {
+                    Token name = token();
+                    List<Token> fields = tokens();
+                    int count = varint();
+                    List<Stmt.Function> methods = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        methods.add(function());
+                    }
+                    return new Stmt.Class(name, fields, methods);
+                }
+                case ASSIGNMENT: {
+                    Token name = token();
+                    return new Stmt.Assignment(name, expression());
+                }
+                case BREAK:
+                    return new Stmt.Break();
+                case CONTINUE:
+                    return new Stmt.Continue();
+                case IF: {
+                    Expr condition = expression();
+                    List<Stmt> thenBody = statements();
+                    List<Stmt> elseBody = in.readBoolean() ? statements() : null;
+                    return new Stmt.If(condition, thenBody, elseBody);
+                }
+                case WHILE: {
+                    Expr condition = expression();
+                    return new Stmt.While(condition, statements());
+                }
+                case FOR: {
+                    Token name = token();
+                    Expr start = expression();
+                    Expr end = expression();
+                    return new Stmt.For(name, start, end, statements());
+                }
+                case FOR_IN: {
+                    Token name = token();
+                    Expr iterable = expression();
+                    return new Stmt.ForIn(name, iterable, statements());
+                }
+                case FUNCTION:
+                    return function();
+                default:
+                    throw new IOException("Unknown statement tag " + tag);
+            }
+        }
+
+        Stmt.Function function() throws IOException {
+            Token name = token();
+            List<Token> params = tokens();
+            return new Stmt.Function(name, params, statements());
+        }
+
+        Expr expression() throws IOException {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case NONE:
+                    return null;
+                case BINARY: {
+                    Expr left = expression();
+                    Token operator = token();
+                    return new Expr.Binary(left, operator, expression());
+                }
+                case GET: {
+                    Expr object = expression();
+                    return new Expr.Get(object, token());
+                }
+                case SET: {
+                    Expr object = expression();
+                    Token name = token();
+                    return new Expr.Set(object, name, expression());
+                }
+                case THIS:
+                    return new Expr.This(token());
+                case ARRAY:
+                    return new Expr.Array(expressions());
+                case MAP: {
+                    List<Expr> keys = expressions();
+                    return new Expr.Map(keys, expressions());
+                }
+                case INDEX: {
+                    Expr array = expression();
+                    return new Expr.Index(array, expression());
+                }
+                case LAMBDA: {
+                    List<Token> params = tokens();
+                    return new Expr.Lambda(params, statements());
+                }
+                case LOGICAL: {
+                    Expr left = expression();
+                    Token operator = token();
+                    return new Expr.Logical(left, operator, expression());
+                }
+                case LITERAL:
+                    return new Expr.Literal(literal());
+                case VARIABLE:
+                    return new Expr.Variable(token());
+                case CALL: {
+                    Expr callee = expression();
+                    return new Expr.Call(callee, expressions());
+                }
+                case SPAWN:
+                    return new Expr.Spawn((Expr.Call) expression());
+                case AWAIT:
+                    return new Expr.Await(expression());
+                default:
+                    throw new IOException("Unknown expression tag " + tag);
+            }
+        }
+
+        List<Expr> expressions() throws IOException {
+            int count = varint();
+            List<Expr> exprs = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                exprs.add(expression());
+            }
+            return exprs;
+        }
+
+        Object literal() throws IOException {
+            int kind = in.readUnsignedByte();
+            switch (kind) {
+                case NULL:   return null;
+                case TRUE:   return true;
+                case FALSE:  return false;
+                case NUMBER: return in.readDouble();
+                case STRING: return string();
+                default:     throw new IOException("Unknown literal kind " + kind);
+            }
+        }
+
+        Token token() throws IOException {
+            int type = varint();
+            if (type >= TOKEN_TYPES.length) {
+                throw new IOException("Unknown token type " + type);
+            }
+            String lexeme = string();
+            return new Token(TOKEN_TYPES[type], lexeme, null, varint());
+        }
+
+        List<Token> tokens() throws IOException {
+            int count = varint();
+            List<Token> tokens = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                tokens.add(token());
+            }
+            return tokens;
+        }
+
+        String string() throws IOException {
+            int index = varint();
+            if (index < strings.size()) {
+                return strings.get(index);
+            }
+            if (index != strings.size()) {
+                throw new IOException("Bad string index " + index);
+            }
+            byte[] bytes = new byte[varint()];
+            in.readFully(bytes);
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            strings.add(value);
+            return value;
+        }
+
+        int varint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Malformed varint");
+        }
+    }
+
+    private AstSerializer() {}
+}
@@ -5,45 +5,89 @@ import lexer.Token;
 
 public abstract class Expr {
 
+    public interface Visitor<R> {
+        R visitBinaryExpr(Binary expr);
+        R visitGetExpr(Get expr);
+        R visitSetExpr(Set expr);
+        R visitThisExpr(This expr);
+        R visitArrayExpr(Array expr);
+        R visitMapExpr(Map expr);
+        R visitIndexExpr(Index expr);
+        R visitLambdaExpr(Lambda expr);
+        R visitLogicalExpr(Logical expr);
+        R visitLiteralExpr(Literal expr);
+        R visitVariableExpr(Variable expr);
+        R visitCallExpr(Call expr);
+        R visitSpawnExpr(Spawn expr);
+        R visitAwaitExpr(Await expr);
+    }
+
+    public abstract <R> R accept(Visitor<R> visitor);
+
     public static class Binary extends Expr {
         public final Expr left;
         public final Token operator;
         public final Expr right;
+        public interpreter.BinaryNode node; // specialized implementation, rewritten at run time
 
         public Binary(Expr left, Token operator, Expr right) {
             this.left = left;
             this.operator = operator;
             this.right = right;
         }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitBinaryExpr(this);
+        }
     }
     public static class Get extends Expr {
     public final Expr object;
     public final Token name;
+    public final runtime.InlineCache cache = new runtime.InlineCache(); // shapes seen at this site
 
     public Get(Expr object, Token name) {
         this.object = object;
         this.name = name;
     }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visitGetExpr(this);
+    }
 }
 
 public static class Set extends Expr {
     public final Expr object;
     public final Token name;
     public final Expr value;
+    public final runtime.InlineCache cache = new runtime.InlineCache(); // shapes seen at this site
 
     public Set(Expr object, Token name, Expr value) {
         this.object = object;
         this.name = name;
         this.value = value;
     }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visitSetExpr(this);
+    }
 }
 
 public static class This extends Expr {
     public final Token keyword;
+    public int depth = -1; // set by the resolver (-1 = global)
+    public int slot = -1;  // -1 = unresolved, look up by name
 
     public This(Token keyword) {
         this.keyword = keyword;
     }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visitThisExpr(this);
+    }
 }
 
 
@@ -53,6 +97,11 @@ public static class This extends Expr {
     public Array(List<Expr> elements) {
         this.elements = elements;
     }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visitArrayExpr(this);
+    }
 }
 
     public static class Map extends Expr {
@@ -63,6 +112,11 @@ public static class This extends Expr {
             this.keys = keys;
             this.values = values;
         }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitMapExpr(this);
+        }
     }
 
 public static class Index extends Expr {
@@ -73,16 +127,27 @@ public static class Index extends Expr {
         this.array = array;
         this.index = index;
     }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visitIndexExpr(this);
+    }
 }
 
     public static class Lambda extends Expr {
     public final List<Token> params;
     public final List<Stmt> body;
+    public String[] layout; // frame slot names, set by the resolver
 
     public Lambda(List<Token> params, List<Stmt> body) {
         this.params = params;
         this.body = body;
     }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visitLambdaExpr(this);
+    }
 }
 
     public static class Logical extends Expr {
@@ -95,6 +160,11 @@ public static class Index extends Expr {
         this.operator = operator;
         this.right = right;
     }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visitLogicalExpr(this);
+    }
 }
 
     public static class Literal extends Expr {
@@ -103,14 +173,26 @@ public static class Index extends Expr {
         public Literal(Object value) {
             this.value = value;
         }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitLiteralExpr(this);
+        }
     }
 
     public static class Variable extends Expr {
         public final Token name;
+        public int depth = -1; // set by the resolver (-1 = global)
+        public int slot = -1;  // -1 = unresolved, look up by name
 
         public Variable(Token name) {
             this.name = name;
         }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitVariableExpr(this);
+        }
     }
 
     public static class Call extends Expr {
@@ -121,6 +203,39 @@ public static class Index extends Expr {
         this.callee = callee;
         this.arguments = arguments;
     }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visitCallExpr(this);
+    }
 }
 
+    // spawn f(args): runs the call on its own thread and yields a task
+    public static class Spawn extends Expr {
+        public final Call call;
+
+        public Spawn(Call call) {
+            this.call = call;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitSpawnExpr(this);
+        }
+    }
+
+    // await task: waits for a spawned call and yields its result
+    public static class Await extends Expr {
+        public final Expr task;
+
+        public Await(Expr task) {
+            this.task = task;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitAwaitExpr(this);
+        }
+    }
+
 }
@@ -5,16 +5,45 @@ import lexer.Token;
 
 public abstract class Stmt {
 
+    public interface Visitor<R> {
+        R visitPrintStmt(Print stmt);
+        R visitExitStmt(Exit stmt);
+        R visitBlockStmt(Block stmt);
+        R visitExpressionStmt(Expression stmt);
+        R visitReturnStmt(Return stmt);
+        R visitClassStmt(Class stmt);
+        R visitAssignmentStmt(Assignment stmt);
+        R visitBreakStmt(Break stmt);
+        R visitContinueStmt(Continue stmt);
+        R visitIfStmt(If stmt);
+        R visitWhileStmt(While stmt);
+        R visitForStmt(For stmt);
+        R visitForInStmt(ForIn stmt);
+        R visitFunctionStmt(Function stmt);
+    }
+
+    public abstract <R> R accept(Visitor<R> visitor);
+
     public static class Print extends Stmt {
     public final List<Expr> expressions;
 
     public Print(List<Expr> expressions) {
         this.expressions = expressions;
     }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visitPrintStmt(this);
+    }
 }
 
     public static class Exit extends Stmt {
     public Exit() {}
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visitExitStmt(this);
+    }
 }
     public static class Block extends Stmt {
     public final List<Stmt> statements;
@@ -22,6 +51,11 @@ public abstract class Stmt {
     public Block(List<Stmt> statements) {
         this.statements = statements;
     }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visitBlockStmt(this);
+    }
 }
     public static class Expression extends Stmt {
     public final Expr expression;
@@ -29,41 +63,76 @@ public abstract class Stmt {
     public Expression(Expr expression) {
         this.expression = expression;
     }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visitExpressionStmt(this);
+    }
 }
     public static class Return extends Stmt {
     public final Expr value; // can be null
+    public boolean tail;     // set by the resolver: value is a call made from a function body
 
     public Return(Expr value) {
         this.value = value;
     }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visitReturnStmt(this);
+    }
 }
 
     public static class Class extends Stmt {
     public final Token name;
     public final List<Token> fields;
     public final List<Stmt.Function> methods;
+    public int depth = -1; // set by the resolver (-1 = global)
+    public int slot = -1;
 
     public Class(Token name, List<Token> fields, List<Stmt.Function> methods) {
         this.name = name;
         this.fields = fields;
         this.methods = methods;
     }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visitClassStmt(this);
+    }
 }
 
 
     public static class Assignment extends Stmt {
         public final Token name;
         public final Expr value;
+        public int depth = -1; // set by the resolver (-1 = global)
+        public int slot = -1;
 
         public Assignment(Token name, Expr value) {
             this.name = name;
             this.value = value;
         }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitAssignmentStmt(this);
+        }
     }
 
-    public static class Break extends Stmt {}
+    public static class Break extends Stmt {
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitBreakStmt(this);
+        }
+    }
 
-    public static class Continue extends Stmt {}
+    public static class Continue extends Stmt {
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitContinueStmt(this);
+        }
+    }
 
 
     public static class If extends Stmt {
@@ -76,6 +145,11 @@ public abstract class Stmt {
             this.thenBody = thenBody;
             this.elseBody = elseBody;
         }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitIfStmt(this);
+        }
     }
 
     public static class While extends Stmt {
@@ -86,18 +160,74 @@ public abstract class Stmt {
         this.condition = condition;
         this.body = body;
     }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visitWhileStmt(this);
+    }
 }
 
+    // for name = start to end { body }: both bounds are evaluated once
+    public static class For extends Stmt {
+        public final Token name;
+        public final Expr start;
+        public final Expr end;
+        public final List<Stmt> body;
+        public int depth = -1; // set by the resolver (-1 = global)
+        public int slot = -1;
+        public boolean counted; // set by the resolver: the body never reassigns name
+
+        public For(Token name, Expr start, Expr end, List<Stmt> body) {
+            this.name = name;
+            this.start = start;
+            this.end = end;
+            this.body = body;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitForStmt(this);
+        }
+    }
+
+    // for name in iterable { body }: iterable is evaluated once
+    public static class ForIn extends Stmt {
+        public final Token name;
+        public final Expr iterable;
+        public final List<Stmt> body;
+        public int depth = -1; // set by the resolver (-1 = global)
+        public int slot = -1;
+
+        public ForIn(Token name, Expr iterable, List<Stmt> body) {
+            this.name = name;
+            this.iterable = iterable;
+            this.body = body;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitForInStmt(this);
+        }
+    }
+
     public static class Function extends Stmt {
     public final Token name;
     public final List<Token> params;
     public final List<Stmt> body;
+    public int depth = -1; // set by the resolver (-1 = global)
+    public int slot = -1;
+    public String[] layout; // frame slot names, set by the resolver
 
     public Function(Token name, List<Token> params, List<Stmt> body) {
         this.name = name;
         this.params = params;
         this.body = body;
     }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visitFunctionStmt(this);
+    }
 }
 
 
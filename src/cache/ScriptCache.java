@@ -0,0 +1,159 @@
+package cache;
+
+import ast.AstSerializer;
+import ast.Stmt;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// On-disk cache of parsed scripts. The optimized syntax tree of a script is
+// stored under the SHA-256 digest of its source, so running an unchanged
+// script again skips the lexer, the parser and the optimizer. Each entry
+// repeats the source length and digest in its header and is only used when
+// both match, so a stale or colliding file is a miss, never the wrong program.
+// The directory keeps the most recently used entries only; older ones are
+// deleted as new ones are written.
+// The cache never stops a script from running: unreadable or outdated
+// entries count as misses and failed writes are ignored.
+public final class ScriptCache {
+
+    // Off unless -Dflux.cache=true; -Dflux.cacheDir moves it and
+    // -Dflux.cacheEntries bounds how many scripts it keeps
+    private static final boolean ENABLED =
+        Boolean.parseBoolean(System.getProperty("flux.cache", "false"));
+    private static final Path DIRECTORY = Path.of(System.getProperty(
+        "flux.cacheDir", System.getProperty("user.home") + "/.flux/cache"));
+    private static final int MAX_ENTRIES = Integer.getInteger("flux.cacheEntries", 256);
+
+    private static final int MAGIC = 0x464C5843; // "FLXC"
+
+    // Identity of one version of a script's source
+    public static final class Key {
+        private final byte[] digest;
+        private final long length;
+
+        private Key(byte[] digest, long length) {
+            this.digest = digest;
+            this.length = length;
+        }
+
+        private Path file() {
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return DIRECTORY.resolve(name.append(".fluxc").toString());
+        }
+    }
+
+    // Key for the script at `path`, or null when caching is off
+    public static Key key(Path path) throws IOException {
+        if (!ENABLED) return null;
+
+        MessageDigest sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            return null; // every JVM has SHA-256; without it there is simply no cache
+        }
+        long size;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            size = channel.size();
+            sha.update(size <= 1 << 16
+                ? ByteBuffer.wrap(Files.readAllBytes(path))
+                : channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+        return new Key(sha.digest(), size);
+    }
+
+    // Cached tree for `key`, or null on a miss
+    public static List<Stmt> load(Key key) {
+        Path file = key.file();
+        if (!Files.isRegularFile(file)) return null;
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != AstSerializer.VERSION) {
+                return null;
+            }
+            byte[] digest = new byte[key.digest.length];
+            if (in.readLong() != key.length) return null;
+            in.readFully(digest);
+            if (!Arrays.equals(digest, key.digest)) return null;
+
+            List<Stmt> statements = AstSerializer.read(in);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis())); // recently used
+            return statements;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    public static void store(Key key, List<Stmt> statements) {
+        Path file = key.file();
+        Path temp = null;
+        try {
+            Files.createDirectories(DIRECTORY);
+            // Written aside and moved into place, so concurrent runs never see half a file
+            temp = Files.createTempFile(DIRECTORY, "entry", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(AstSerializer.VERSION);
+                out.writeLong(key.length);
+                out.write(key.digest);
+                AstSerializer.write(statements, out);
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            prune();
+        } catch (IOException | RuntimeException e) {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // nothing left to do
+                }
+            }
+        }
+    }
+
+    // Deletes the least recently used entries beyond MAX_ENTRIES
+    private static void prune() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(DIRECTORY, "*.fluxc")) {
+            files.forEach(entries::add);
+        }
+        if (entries.size() <= MAX_ENTRIES) return;
+
+        Map<Path, Long> used = new HashMap<>();
+        for (Path entry : entries) {
+            try {
+                used.put(entry, Files.getLastModifiedTime(entry).toMillis());
+            } catch (IOException e) {
+                used.put(entry, 0L); // already gone, or unreadable: first to go
+            }
+        }
+        entries.sort(Comparator.comparing(used::get));
+        for (Path entry : entries.subList(0, entries.size() - MAX_ENTRIES)) {
+            Files.deleteIfExists(entry);
+        }
+    }
+
+    private ScriptCache() {}
+}
@@ -0,0 +1,14 @@
+package compiler;
+
+// Compiled body of one function: instructions plus their constant pool
+public class Chunk {
+    public final int[] code;
+    public final Object[] constants;
+    public final int maxStack;
+
+    public Chunk(int[] code, Object[] constants, int maxStack) {
+        this.code = code;
+        this.constants = constants;
+        this.maxStack = maxStack;
+    }
+}
@@ -0,0 +1,17 @@
+package compiler;
+
+import java.util.List;
+import lexer.Token;
+
+// Compiled class declaration; the VM turns it into a FluxClass
+public class ClassPrototype {
+    public final Token name;
+    public final List<Token> fields;
+    public final List<Prototype> methods;
+
+    public ClassPrototype(Token name, List<Token> fields, List<Prototype> methods) {
+        this.name = name;
+        this.fields = fields;
+        this.methods = methods;
+    }
+}
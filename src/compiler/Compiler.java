@@ -0,0 +1,515 @@
+package compiler;
+
+import ast.Expr;
+import ast.Stmt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lexer.Token;
+import runtime.InlineCache;
+
+/**
+ * Lowers a resolved AST into bytecode for the VM.
+ *
+ * One Compiler instance produces one Chunk; nested functions, lambdas and
+ * methods are compiled by their own instance and stored in the constant
+ * pool as Prototypes. Variable slots come straight from the resolver, so
+ * the resolver must run before compile().
+ */
+public class Compiler {
+
+    private int[] code = new int[64];
+    private int count = 0;
+
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+
+    private int stackDepth = 0;
+    private int maxStack = 0;
+
+    private final List<Loop> loops = new ArrayList<>();
+
+    private static class Loop {
+        final List<Integer> breaks = new ArrayList<>();
+        final List<Integer> continues = new ArrayList<>();
+    }
+
+    public static Prototype compile(List<Stmt> statements) {
+        Compiler compiler = new Compiler();
+        return new Prototype(null, List.of(), new String[0], false, compiler.body(statements));
+    }
+
+    private static Prototype function(Token name, List<Token> params, List<Stmt> body,
+                                      String[] layout, boolean method) {
+        Compiler compiler = new Compiler();
+        return new Prototype(name, params, layout, method, compiler.body(body));
+    }
+
+    private Chunk body(List<Stmt> statements) {
+        statements(statements);
+
+        // Falling off the end returns null
+        emit(OpCode.NULL, 1);
+        emit(OpCode.RETURN, -1);
+
+        return new Chunk(Arrays.copyOf(code, count), constants.toArray(), maxStack);
+    }
+
+    // ===================== STATEMENTS =====================
+
+    private void statements(List<Stmt> statements) {
+        for (Stmt stmt : statements) {
+            statement(stmt);
+        }
+    }
+
+    private void statement(Stmt stmt) {
+
+        if (stmt instanceof Stmt.Print) {
+            List<Expr> expressions = ((Stmt.Print) stmt).expressions;
+            for (Expr expr : expressions) {
+                expression(expr);
+                if (expressions.size() > 1) {
+                    // Capture the text now: later expressions may mutate this value
+                    emit(OpCode.TO_STRING, 0);
+                }
+            }
+            emit(OpCode.PRINT, -expressions.size(), expressions.size());
+        }
+
+        else if (stmt instanceof Stmt.Expression) {
+            expression(((Stmt.Expression) stmt).expression);
+            emit(OpCode.POP, -1);
+        }
+
+        else if (stmt instanceof Stmt.Assignment) {
+            Stmt.Assignment assign = (Stmt.Assignment) stmt;
+            expression(assign.value);
+            store(assign.depth, assign.slot, assign.name);
+        }
+
+        else if (stmt instanceof Stmt.Function) {
+            Stmt.Function fn = (Stmt.Function) stmt;
+            Prototype prototype = function(fn.name, fn.params, fn.body, fn.layout, false);
+            emit(OpCode.CLOSURE, 1, addConstant(prototype));
+            store(fn.depth, fn.slot, fn.name);
+        }
+
+        else if (stmt instanceof Stmt.Class) {
+            Stmt.Class cls = (Stmt.Class) stmt;
+            List<Prototype> methods = new ArrayList<>();
+            for (Stmt.Function method : cls.methods) {
+                methods.add(function(method.name, method.params, method.body, method.layout, true));
+            }
+            ClassPrototype klass = new ClassPrototype(cls.name, cls.fields, methods);
+            emit(OpCode.CLASS, 1, addConstant(klass));
+            store(cls.depth, cls.slot, cls.name);
+        }
+
+        else if (stmt instanceof Stmt.Return) {
+            Stmt.Return r = (Stmt.Return) stmt;
+            if (r.value == null) {
+                emit(OpCode.NULL, 1);
+            } else if (r.tail) {
+                call((Expr.Call) r.value, true);
+            } else {
+                expression(r.value);
+            }
+            emit(OpCode.RETURN, -1);
+        }
+
+        else if (stmt instanceof Stmt.Exit) {
+            emit(OpCode.EXIT, 0);
+        }
+
+        else if (stmt instanceof Stmt.Break) {
+            if (loops.isEmpty()) throw compileError("'break' outside of a loop.");
+            loops.get(loops.size() - 1).breaks.add(emitJump(OpCode.JUMP, 0));
+        }
+
+        else if (stmt instanceof Stmt.Continue) {
+            if (loops.isEmpty()) throw compileError("'continue' outside of a loop.");
+            loops.get(loops.size() - 1).continues.add(emitJump(OpCode.JUMP, 0));
+        }
+
+        else if (stmt instanceof Stmt.Block) {
+            statements(((Stmt.Block) stmt).statements);
+        }
+
+        else if (stmt instanceof Stmt.If) {
+            Stmt.If ifStmt = (Stmt.If) stmt;
+            expression(ifStmt.condition);
+            int elseJump = emitJump(OpCode.JUMP_IF_FALSE, -1);
+            statements(ifStmt.thenBody);
+
+            if (ifStmt.elseBody != null) {
+                int endJump = emitJump(OpCode.JUMP, 0);
+                patch(elseJump);
+                statements(ifStmt.elseBody);
+                patch(endJump);
+            } else {
+                patch(elseJump);
+            }
+        }
+
+        else if (stmt instanceof Stmt.While) {
+            Stmt.While whileStmt = (Stmt.While) stmt;
+            Loop loop = new Loop();
+            loops.add(loop);
+            int start = count;
+
+            expression(whileStmt.condition);
+            int exitJump = emitJump(OpCode.JUMP_IF_FALSE, -1);
+            statements(whileStmt.body);
+            emit(OpCode.JUMP, 0, start);
+
+            patch(exitJump);
+            endLoop(loop, start);
+        }
+
+        else if (stmt instanceof Stmt.For) {
+            forLoop((Stmt.For) stmt);
+        }
+
+        else if (stmt instanceof Stmt.ForIn) {
+            Stmt.ForIn forIn = (Stmt.ForIn) stmt;
+            Loop loop = new Loop();
+
+            // The iterable is evaluated once; its iterator stays on the stack below the body
+            expression(forIn.iterable);
+            emit(OpCode.ITER, 0);
+            int start = count;
+            int exitJump = emitJump(OpCode.ITER_NEXT, 1);
+            store(forIn.depth, forIn.slot, forIn.name);
+            loops.add(loop);
+            statements(forIn.body);
+            emit(OpCode.JUMP, 0, start);
+
+            patch(exitJump);
+            endLoop(loop, start);
+            emit(OpCode.POP, -1); // the iterator
+        }
+
+        else {
+            throw compileError("Unknown statement.");
+        }
+    }
+
+    private void forLoop(Stmt.For forStmt) {
+        Loop loop = new Loop();
+
+        // Bounds are evaluated once; the end stays on the stack below the body
+        expression(forStmt.start);
+        expression(forStmt.end);
+        emit(OpCode.FOR_PREP, 0);
+        store(forStmt.depth, forStmt.slot, forStmt.name);
+
+        if (forStmt.counted && forStmt.depth == 0 && forStmt.slot >= 0) {
+            // Only the loop writes the local: test once, then step and test in one instruction
+            load(forStmt.depth, forStmt.slot, forStmt.name);
+            int exitJump = emitJump(OpCode.FOR_TEST, -1);
+            int body = count;
+            loops.add(loop);
+            statements(forStmt.body);
+            int step = count;
+            emit(OpCode.FOR_STEP, 0, forStmt.slot, body);
+            patch(exitJump);
+            endLoop(loop, step);
+        } else {
+            int start = count;
+            load(forStmt.depth, forStmt.slot, forStmt.name);
+            int exitJump = emitJump(OpCode.FOR_TEST, -1);
+            loops.add(loop);
+            statements(forStmt.body);
+            int step = count;
+            load(forStmt.depth, forStmt.slot, forStmt.name);
+            emit(OpCode.CONST, 1, addConstant(1.0));
+            emit(OpCode.ADD, -1);
+            store(forStmt.depth, forStmt.slot, forStmt.name);
+            emit(OpCode.JUMP, 0, start);
+            patch(exitJump);
+            endLoop(loop, step);
+        }
+
+        emit(OpCode.POP, -1); // the end bound
+    }
+
+    // Points the loop's continues at `next` and its breaks at the current position
+    private void endLoop(Loop loop, int next) {
+        for (int jump : loop.continues) {
+            code[jump] = next;
+        }
+        for (int jump : loop.breaks) {
+            patch(jump);
+        }
+        loops.remove(loops.size() - 1);
+    }
+
+    // ===================== EXPRESSIONS =====================
+
+    private void expression(Expr expr) {
+
+        if (expr instanceof Expr.Literal) {
+            Object value = ((Expr.Literal) expr).value;
+            if (value == null) {
+                emit(OpCode.NULL, 1);
+            } else if (value instanceof Boolean) {
+                emit((Boolean) value ? OpCode.TRUE : OpCode.FALSE, 1);
+            } else if (value instanceof String) {
+                emit(OpCode.STRING, 1, addConstant(value));
+            } else {
+                emit(OpCode.CONST, 1, addConstant(value));
+            }
+        }
+
+        else if (expr instanceof Expr.Variable) {
+            Expr.Variable variable = (Expr.Variable) expr;
+            load(variable.depth, variable.slot, variable.name);
+        }
+
+        else if (expr instanceof Expr.This) {
+            Expr.This self = (Expr.This) expr;
+            load(self.depth, self.slot, self.keyword);
+        }
+
+        else if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            expression(binary.left);
+            expression(binary.right);
+            emit(binaryOp(binary.operator), -1);
+        }
+
+        else if (expr instanceof Expr.Logical) {
+            logical((Expr.Logical) expr);
+        }
+
+        else if (expr instanceof Expr.Call) {
+            call((Expr.Call) expr, false);
+        }
+
+        else if (expr instanceof Expr.Spawn) {
+            spawn(((Expr.Spawn) expr).call);
+        }
+
+        else if (expr instanceof Expr.Await) {
+            expression(((Expr.Await) expr).task);
+            emit(OpCode.AWAIT, 0);
+        }
+
+        else if (expr instanceof Expr.Get) {
+            Expr.Get get = (Expr.Get) expr;
+            expression(get.object);
+            emit(OpCode.GET_PROPERTY, 0, addConstant(get.name), addConstant(new InlineCache()));
+        }
+
+        else if (expr instanceof Expr.Set) {
+            Expr.Set set = (Expr.Set) expr;
+            expression(set.object);
+            expression(set.value);
+            emit(OpCode.SET_PROPERTY, -1, addConstant(set.name), addConstant(new InlineCache()));
+        }
+
+        else if (expr instanceof Expr.Index) {
+            expression(((Expr.Index) expr).array);
+            expression(((Expr.Index) expr).index);
+            emit(OpCode.INDEX, -1);
+        }
+
+        else if (expr instanceof Expr.Array) {
+            List<Expr> elements = ((Expr.Array) expr).elements;
+            for (Expr e : elements) {
+                expression(e);
+            }
+            emit(OpCode.ARRAY, 1 - elements.size(), elements.size());
+        }
+
+        else if (expr instanceof Expr.Map) {
+            List<Expr> keys = ((Expr.Map) expr).keys;
+            List<Expr> values = ((Expr.Map) expr).values;
+            for (int i = 0; i < keys.size(); i++) {
+                expression(keys.get(i));
+                expression(values.get(i));
+            }
+            emit(OpCode.MAP, 1 - 2 * keys.size(), keys.size());
+        }
+
+        else if (expr instanceof Expr.Lambda) {
+            Expr.Lambda lambda = (Expr.Lambda) expr;
+            Prototype prototype = function(null, lambda.params, lambda.body, lambda.layout, false);
+            emit(OpCode.CLOSURE, 1, addConstant(prototype));
+        }
+
+        else {
+            throw compileError("Unknown expression.");
+        }
+    }
+
+    private void call(Expr.Call call, boolean tail) {
+        int argc = call.arguments.size();
+
+        // obj.name(args): look the method up and call it in one step
+        if (call.callee instanceof Expr.Get) {
+            Expr.Get get = (Expr.Get) call.callee;
+            expression(get.object);
+            for (Expr arg : call.arguments) {
+                expression(arg);
+            }
+            int op = tail ? OpCode.TAIL_INVOKE : OpCode.INVOKE;
+            emit(op, -argc, addConstant(get.name), addConstant(new InlineCache()), argc);
+            return;
+        }
+
+        expression(call.callee);
+        for (Expr arg : call.arguments) {
+            expression(arg);
+        }
+        emit(tail ? OpCode.TAIL_CALL : OpCode.CALL, -argc, argc);
+    }
+
+    // The task gets copies of a method's receiver and of the arguments
+    private void spawn(Expr.Call call) {
+        int argc = call.arguments.size();
+        if (call.callee instanceof Expr.Get) {
+            Expr.Get get = (Expr.Get) call.callee;
+            expression(get.object);
+            emit(OpCode.ISOLATE, 0);
+            emit(OpCode.GET_PROPERTY, 0, addConstant(get.name), addConstant(new InlineCache()));
+        } else {
+            expression(call.callee);
+            emit(OpCode.ISOLATE, 0); // a bound method or a closure carries state too
+        }
+        for (Expr arg : call.arguments) {
+            expression(arg);
+            emit(OpCode.ISOLATE, 0);
+        }
+        emit(OpCode.SPAWN, -argc, argc);
+    }
+
+    private void logical(Expr.Logical logical) {
+        switch (logical.operator.type) {
+            case NOT -> {
+                expression(logical.right);
+                emit(OpCode.NOT, 0);
+            }
+            case OR -> {
+                // left truthy → true, otherwise truthiness of right
+                expression(logical.left);
+                int rightJump = emitJump(OpCode.JUMP_IF_FALSE, -1);
+                emit(OpCode.TRUE, 1);
+                int endJump = emitJump(OpCode.JUMP, 0);
+                stackDepth--;
+                patch(rightJump);
+                expression(logical.right);
+                emit(OpCode.TO_BOOLEAN, 0);
+                patch(endJump);
+            }
+            case AND -> {
+                // left falsy → false, otherwise truthiness of right
+                expression(logical.left);
+                int falseJump = emitJump(OpCode.JUMP_IF_FALSE, -1);
+                expression(logical.right);
+                emit(OpCode.TO_BOOLEAN, 0);
+                int endJump = emitJump(OpCode.JUMP, 0);
+                stackDepth--;
+                patch(falseJump);
+                emit(OpCode.FALSE, 1);
+                patch(endJump);
+            }
+            default -> throw compileError("Unknown logical operator.");
+        }
+    }
+
+    private int binaryOp(Token operator) {
+        return switch (operator.type) {
+            case PLUS -> OpCode.ADD;
+            case MINUS -> OpCode.SUBTRACT;
+            case STAR -> OpCode.MULTIPLY;
+            case SLASH -> OpCode.DIVIDE;
+            case PERCENT -> OpCode.MODULO;
+            case GREATER -> OpCode.GREATER;
+            case GREATER_EQUAL -> OpCode.GREATER_EQUAL;
+            case LESS -> OpCode.LESS;
+            case LESS_EQUAL -> OpCode.LESS_EQUAL;
+            case EQUAL_EQUAL -> OpCode.EQUAL;
+            case BANG_EQUAL -> OpCode.NOT_EQUAL;
+            default -> throw compileError("Unknown operator '" + operator.lexeme() + "'.");
+        };
+    }
+
+    // ===================== VARIABLES =====================
+
+    private void load(int depth, int slot, Token name) {
+        int nameIndex = addConstant(name.lexeme());
+        if (slot < 0) {
+            emit(OpCode.LOAD_NAME, 1, nameIndex);
+        } else if (depth < 0) {
+            emit(OpCode.LOAD_GLOBAL, 1, slot, nameIndex);
+        } else if (depth == 0) {
+            emit(OpCode.LOAD_LOCAL, 1, slot, nameIndex);
+        } else {
+            emit(OpCode.LOAD_OUTER, 1, depth, slot, nameIndex);
+        }
+    }
+
+    private void store(int depth, int slot, Token name) {
+        if (slot < 0) {
+            emit(OpCode.STORE_NAME, -1, addConstant(name.lexeme()));
+        } else if (depth < 0) {
+            emit(OpCode.STORE_GLOBAL, -1, slot);
+        } else if (depth == 0) {
+            emit(OpCode.STORE_LOCAL, -1, slot);
+        } else {
+            emit(OpCode.STORE_OUTER, -1, depth, slot);
+        }
+    }
+
+    // ===================== EMITTING =====================
+
+    private void emit(int op, int stackEffect, int... operands) {
+        ensureCapacity(1 + operands.length);
+        code[count++] = op;
+        for (int operand : operands) {
+            code[count++] = operand;
+        }
+
+        stackDepth += stackEffect;
+        maxStack = Math.max(maxStack, stackDepth);
+    }
+
+    // Emits a jump with a placeholder target and returns the operand position
+    private int emitJump(int op, int stackEffect) {
+        emit(op, stackEffect, -1);
+        return count - 1;
+    }
+
+    private void patch(int operand) {
+        code[operand] = count;
+    }
+
+    private int addConstant(Object value) {
+        if (!(value instanceof Double || value instanceof String)) {
+            constants.add(value);
+            return constants.size() - 1;
+        }
+
+        Integer index = constantIndex.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndex.put(value, index);
+        }
+        return index;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (count + extra > code.length) {
+            code = Arrays.copyOf(code, Math.max(code.length * 2, count + extra));
+        }
+    }
+
+    private RuntimeException compileError(String message) {
+        return new RuntimeException("[Flux Compile Error]\n" + message);
+    }
+}
@@ -0,0 +1,85 @@
+package compiler;
+
+/**
+ * Instruction set of the Flux bytecode VM.
+ *
+ * Each instruction is one int opcode followed by its operands, all stored in
+ * the chunk's int[] code. Operand counts are listed next to each opcode.
+ */
+public final class OpCode {
+
+    // Constants
+    public static final int CONST = 0;         // index into constant pool
+    public static final int STRING = 1;        // index of a String constant, pushes a new FluxString
+    public static final int NULL = 2;
+    public static final int TRUE = 3;
+    public static final int FALSE = 4;
+
+    // Variables
+    public static final int LOAD_LOCAL = 5;    // slot, name index
+    public static final int STORE_LOCAL = 6;   // slot
+    public static final int LOAD_OUTER = 7;    // depth, slot, name index
+    public static final int STORE_OUTER = 8;   // depth, slot
+    public static final int LOAD_GLOBAL = 9;   // slot, name index
+    public static final int STORE_GLOBAL = 10; // slot
+    public static final int LOAD_NAME = 11;    // name index (unresolved code)
+    public static final int STORE_NAME = 12;   // name index (unresolved code)
+
+    // Operators
+    public static final int ADD = 13;
+    public static final int SUBTRACT = 14;
+    public static final int MULTIPLY = 15;
+    public static final int DIVIDE = 16;
+    public static final int MODULO = 17;
+    public static final int GREATER = 18;
+    public static final int GREATER_EQUAL = 19;
+    public static final int LESS = 20;
+    public static final int LESS_EQUAL = 21;
+    public static final int EQUAL = 22;
+    public static final int NOT_EQUAL = 23;
+    public static final int NOT = 24;
+    public static final int TO_BOOLEAN = 25;
+
+    // Control flow
+    public static final int JUMP = 26;           // target
+    public static final int JUMP_IF_FALSE = 27;  // target, pops the condition
+    public static final int POP = 28;
+    public static final int PRINT = 29;          // value count
+    public static final int EXIT = 30;
+
+    // Data structures and objects
+    public static final int ARRAY = 31;          // element count
+    public static final int MAP = 32;            // entry count
+    public static final int INDEX = 33;
+    public static final int GET_PROPERTY = 34;   // Token constant, InlineCache constant
+    public static final int SET_PROPERTY = 35;   // Token constant, InlineCache constant
+
+    // Functions and classes
+    public static final int CLOSURE = 36;        // index of a Prototype constant
+    public static final int CLASS = 37;          // index of a ClassPrototype constant
+    public static final int CALL = 38;           // argument count
+    public static final int RETURN = 39;
+    public static final int INVOKE = 40;         // Token constant, InlineCache constant, argument count
+
+    public static final int TO_STRING = 41;      // printed form of the top value, for multi-value print
+
+    // Counted for loops; the end bound stays on the stack for the whole loop
+    public static final int FOR_PREP = 42;       // checks start and end are numbers, leaves start on top
+    public static final int FOR_TEST = 43;       // exit target, pops the loop variable, jumps when past the end
+    public static final int FOR_STEP = 44;       // local slot, body target: increments and loops while in range
+
+    // `return f(...)` inside a function: the callee replaces the current frame
+    public static final int TAIL_CALL = 45;      // argument count
+    public static final int TAIL_INVOKE = 46;    // Token constant, InlineCache constant, argument count
+
+    // Tasks
+    public static final int SPAWN = 47;          // argument count: starts callee(args) on its own thread
+    public static final int AWAIT = 48;
+    public static final int ISOLATE = 49;        // replaces the top value with a copy a task may own
+
+    // for-in loops; the iterator stays on the stack for the whole loop
+    public static final int ITER = 50;           // replaces the top value with an iterator over it
+    public static final int ITER_NEXT = 51;      // exit target: pushes the next element, or jumps when there is none
+
+    private OpCode() {}
+}
@@ -0,0 +1,21 @@
+package compiler;
+
+import java.util.List;
+import lexer.Token;
+
+// Everything the VM needs to create and call a function
+public class Prototype {
+    public final Token name;          // null for lambdas and the top-level script
+    public final List<Token> params;
+    public final String[] layout;     // frame slot names from the resolver
+    public final boolean method;      // `this` occupies slot 0
+    public final Chunk chunk;
+
+    public Prototype(Token name, List<Token> params, String[] layout, boolean method, Chunk chunk) {
+        this.name = name;
+        this.params = params;
+        this.layout = layout;
+        this.method = method;
+        this.chunk = chunk;
+    }
+}
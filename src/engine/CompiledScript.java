@@ -0,0 +1,50 @@
+package engine;
+
+import compiler.Prototype;
+import runtime.Environment;
+import runtime.ExitSignal;
+import vm.VM;
+
+// A parsed, resolved and compiled script. Nothing in it changes after
+// compile(): bytecode and constants are read-only, and the inline caches
+// they hold tolerate concurrent updates. Any number of threads may run
+// one script at the same time as long as each uses its own FluxContext.
+public final class CompiledScript {
+
+    private final Prototype script;
+    private final Environment globals; // layout and builtins; only ever copied
+    private final int maxCallDepth;
+
+    CompiledScript(Prototype script, Environment globals, int maxCallDepth) {
+        this.script = script;
+        this.globals = globals;
+        this.maxCallDepth = maxCallDepth;
+    }
+
+    // Fresh globals holding only the builtins
+    public FluxContext newContext() {
+        return new FluxContext(globals);
+    }
+
+    // Pool of up to `capacity` idle contexts for this script
+    public ContextPool newPool(int capacity) {
+        return new ContextPool(this, capacity);
+    }
+
+    // Runs the script top to bottom in `context`. Globals it assigns stay
+    // in the context afterwards; running again in the same context sees them.
+    public void run(FluxContext context) {
+        if (!context.belongsTo(globals)) {
+            throw new IllegalArgumentException("The context was created for a different script.");
+        }
+        VM vm = context.vm();
+        vm.reset();
+        vm.setMaxCallDepth(maxCallDepth);
+        vm.setOutput(context.getOutput());
+        try {
+            vm.run(script);
+        } catch (ExitSignal e) {
+            // `exit` ends the script normally
+        }
+    }
+}
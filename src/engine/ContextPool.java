@@ -0,0 +1,30 @@
+package engine;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+// Reuses FluxContexts of one script between runs, so a busy service does
+// not rebuild globals and VM stacks for every request. Contexts come out
+// of acquire() in the state of a new one; release() resets them, which is
+// one array copy of the globals, and keeps them for the next caller.
+// Safe to share between threads.
+public final class ContextPool {
+
+    private final CompiledScript script;
+    private final ArrayBlockingQueue<FluxContext> idle;
+
+    ContextPool(CompiledScript script, int capacity) {
+        this.script = script;
+        this.idle = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public FluxContext acquire() {
+        FluxContext context = idle.poll();
+        return context != null ? context : script.newContext();
+    }
+
+    // The caller must not use `context` afterwards; it is dropped when the pool is full
+    public void release(FluxContext context) {
+        context.reset();
+        idle.offer(context);
+    }
+}
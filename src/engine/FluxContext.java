@@ -0,0 +1,67 @@
+package engine;
+
+import java.io.PrintStream;
+import runtime.Environment;
+import runtime.FluxString;
+import vm.VM;
+
+// Per-run state of a CompiledScript: its global variables, where its
+// print statements go, and the VM that runs it. Contexts are cheap to
+// create, can be reset() and reused (see ContextPool), and are not
+// thread-safe; give each request or thread its own.
+public final class FluxContext {
+
+    private final Environment template; // the script's initial globals
+    private final Environment globals;
+    private PrintStream output = System.out;
+    private VM vm; // created on the first run, reused after that
+
+    FluxContext(Environment template) {
+        this.template = template;
+        this.globals = new Environment(template);
+    }
+
+    // Back to the state of a new context: globals hold only the builtins
+    // again and output goes to System.out. One array copy of the global slots.
+    public void reset() {
+        globals.reset(template);
+        output = System.out;
+    }
+
+    // Value of a global after a run, or null when the script never set it.
+    // Flux strings are returned as Java Strings.
+    public Object get(String name) {
+        int slot = globals.indexOf(name);
+        if (slot < 0) return null;
+        Object value = globals.get(slot);
+        if (value == Environment.UNDEFINED) return null;
+        if (value instanceof FluxString) return ((FluxString) value).getValue();
+        return value;
+    }
+
+    // Sets a global before a run. Numbers must be Doubles; Java Strings
+    // become Flux strings.
+    public void set(String name, Object value) {
+        if (value instanceof String) {
+            value = new FluxString((String) value);
+        }
+        globals.define(name, value);
+    }
+
+    public PrintStream getOutput() {
+        return output;
+    }
+
+    public void setOutput(PrintStream output) {
+        this.output = output;
+    }
+
+    boolean belongsTo(Environment template) {
+        return this.template == template;
+    }
+
+    VM vm() {
+        if (vm == null) vm = new VM(globals);
+        return vm;
+    }
+}
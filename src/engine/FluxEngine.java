@@ -0,0 +1,58 @@
+package engine;
+
+import ast.Stmt;
+import compiler.Compiler;
+import compiler.Prototype;
+import java.util.List;
+import lexer.Lexer;
+import optimizer.Optimizer;
+import parser.Parser;
+import resolver.Resolver;
+import runtime.Builtins;
+import runtime.Environment;
+import runtime.Limits;
+
+/**
+ * Entry point for embedding Flux in a Java application.
+ *
+ * compile() runs the whole front end once (lexer, parser, optimizer,
+ * resolver and bytecode compiler) and returns an immutable CompiledScript.
+ * The script can then be run any number of times, from any number of
+ * threads at once, each run against its own FluxContext:
+ *
+ *   FluxEngine engine = new FluxEngine();
+ *   CompiledScript script = engine.compile("total = a + b");
+ *   FluxContext context = script.newContext();
+ *   context.set("a", 1.0);
+ *   context.set("b", 2.0);
+ *   script.run(context);
+ *   context.get("total"); // 3.0
+ *
+ * Scripts run on the bytecode VM, so Flux calls do not use the calling
+ * thread's Java stack.
+ */
+public final class FluxEngine {
+
+    private final int maxCallDepth;
+
+    public FluxEngine() {
+        this(Limits.MAX_CALL_DEPTH);
+    }
+
+    public FluxEngine(int maxCallDepth) {
+        this.maxCallDepth = maxCallDepth;
+    }
+
+    // Throws a RuntimeException with the syntax error when `source` does not parse
+    public CompiledScript compile(CharSequence source) {
+        List<Stmt> statements = Optimizer.optimize(new Parser(new Lexer(source)).parse());
+
+        // Global slots are fixed here; every context copies this layout
+        Environment globals = new Environment();
+        Builtins.define(globals);
+        new Resolver(globals).resolve(statements);
+        Prototype script = Compiler.compile(statements);
+
+        return new CompiledScript(script, globals, maxCallDepth);
+    }
+}
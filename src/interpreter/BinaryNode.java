@@ -0,0 +1,272 @@
+package interpreter;
+
+import ast.Expr;
+import lexer.TokenType;
+import runtime.Numbers;
+
+// Self-specializing implementation of one binary operator site.
+// A site starts uninitialized, rewrites itself into a typed node after its
+// first execution, and falls back to the generic node on a type miss.
+// Every node computes the same result as Interpreter.binary(), so a race
+// between two rewrites of the same site is harmless.
+public abstract class BinaryNode {
+
+    final Expr.Binary site;
+
+    BinaryNode(Expr.Binary site) {
+        this.site = site;
+    }
+
+    abstract Object execute(Interpreter interpreter);
+
+    // Result as an unboxed number; throws when the value is not a number
+    double executeNumber(Interpreter interpreter) throws UnexpectedResult {
+        Object value = execute(interpreter);
+        if (value instanceof Double) return (double) value;
+        throw new UnexpectedResult(value);
+    }
+
+    static BinaryNode of(Expr.Binary site) {
+        BinaryNode node = site.node;
+        if (node == null) {
+            node = new Uninitialized(site);
+            site.node = node;
+        }
+        return node;
+    }
+
+    // Evaluates an operand without boxing when it is itself a numeric site
+    static double number(Interpreter interpreter, Expr expr) throws UnexpectedResult {
+        if (expr instanceof Expr.Binary) {
+            return of((Expr.Binary) expr).executeNumber(interpreter);
+        }
+        Object value = interpreter.evaluate(expr);
+        if (value instanceof Double) return (double) value;
+        throw new UnexpectedResult(value);
+    }
+
+    // Type miss: replace this site with the generic node for good
+    Object deoptimize(Interpreter interpreter, Object left, Object right) {
+        site.node = new Generic(site);
+        return interpreter.binary(site.operator.type, left, right);
+    }
+
+    // Carries an already computed value that did not match the expected type
+    static final class UnexpectedResult extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final Object value;
+
+        UnexpectedResult(Object value) {
+            super(null, null, false, false);
+            this.value = value;
+        }
+    }
+
+    // ===================== STATES =====================
+
+    static final class Uninitialized extends BinaryNode {
+        Uninitialized(Expr.Binary site) {
+            super(site);
+        }
+
+        @Override
+        Object execute(Interpreter interpreter) {
+            Object left = interpreter.evaluate(site.left);
+            Object right = interpreter.evaluate(site.right);
+            site.node = specialize(left, right);
+            return interpreter.binary(site.operator.type, left, right);
+        }
+
+        private BinaryNode specialize(Object left, Object right) {
+            TokenType operator = site.operator.type;
+            boolean numbers = left instanceof Double && right instanceof Double;
+
+            if (operator == TokenType.PLUS && !numbers) {
+                boolean adds = (left == null || left instanceof Double) && right instanceof Double;
+                return adds ? new Generic(site) : new StringConcat(site);
+            }
+            if (!numbers) {
+                return new Generic(site);
+            }
+
+            switch (operator) {
+            case PLUS:          return new NumberAdd(site);
+            case MINUS:         return new NumberSubtract(site);
+            case STAR:          return new NumberMultiply(site);
+            case SLASH:         return new NumberDivide(site);
+            case PERCENT:       return new NumberModulo(site);
+            case GREATER:       return new NumberGreater(site);
+            case GREATER_EQUAL: return new NumberGreaterEqual(site);
+            case LESS:          return new NumberLess(site);
+            case LESS_EQUAL:    return new NumberLessEqual(site);
+            case EQUAL_EQUAL:   return new NumberEqual(site);
+            case BANG_EQUAL:    return new NumberNotEqual(site);
+            default:            return new Generic(site);
+            }
+        }
+    }
+
+    static final class Generic extends BinaryNode {
+        Generic(Expr.Binary site) {
+            super(site);
+        }
+
+        @Override
+        Object execute(Interpreter interpreter) {
+            Object left = interpreter.evaluate(site.left);
+            Object right = interpreter.evaluate(site.right);
+            return interpreter.binary(site.operator.type, left, right);
+        }
+    }
+
+    static final class StringConcat extends BinaryNode {
+        StringConcat(Expr.Binary site) {
+            super(site);
+        }
+
+        @Override
+        Object execute(Interpreter interpreter) {
+            Object left = interpreter.evaluate(site.left);
+            Object right = interpreter.evaluate(site.right);
+            if (right instanceof Double && (left == null || left instanceof Double)) {
+                return deoptimize(interpreter, left, right);
+            }
+            return interpreter.concat(left, right);
+        }
+    }
+
+    // ---------------- NUMBER ARITHMETIC ----------------
+
+    abstract static class Arithmetic extends BinaryNode {
+        Arithmetic(Expr.Binary site) {
+            super(site);
+        }
+
+        abstract double apply(double left, double right);
+
+        @Override
+        Object execute(Interpreter interpreter) {
+            try {
+                return executeNumber(interpreter);
+            } catch (UnexpectedResult e) {
+                return e.value;
+            }
+        }
+
+        @Override
+        double executeNumber(Interpreter interpreter) throws UnexpectedResult {
+            double left;
+            try {
+                left = number(interpreter, site.left);
+            } catch (UnexpectedResult e) {
+                Object right = interpreter.evaluate(site.right);
+                return unexpected(deoptimize(interpreter, e.value, right));
+            }
+
+            double right;
+            try {
+                right = number(interpreter, site.right);
+            } catch (UnexpectedResult e) {
+                return unexpected(deoptimize(interpreter, left, e.value));
+            }
+
+            return apply(left, right);
+        }
+
+        private static double unexpected(Object value) throws UnexpectedResult {
+            if (value instanceof Double) return (double) value;
+            throw new UnexpectedResult(value);
+        }
+    }
+
+    static final class NumberAdd extends Arithmetic {
+        NumberAdd(Expr.Binary site) { super(site); }
+        @Override double apply(double left, double right) { return left + right; }
+    }
+
+    static final class NumberSubtract extends Arithmetic {
+        NumberSubtract(Expr.Binary site) { super(site); }
+        @Override double apply(double left, double right) { return left - right; }
+    }
+
+    static final class NumberMultiply extends Arithmetic {
+        NumberMultiply(Expr.Binary site) { super(site); }
+        @Override double apply(double left, double right) { return left * right; }
+    }
+
+    static final class NumberDivide extends Arithmetic {
+        NumberDivide(Expr.Binary site) { super(site); }
+        @Override double apply(double left, double right) { return left / right; }
+    }
+
+    static final class NumberModulo extends Arithmetic {
+        NumberModulo(Expr.Binary site) { super(site); }
+        @Override double apply(double left, double right) { return Numbers.modulo(left, right); }
+    }
+
+    // ---------------- NUMBER COMPARISON ----------------
+
+    abstract static class Comparison extends BinaryNode {
+        Comparison(Expr.Binary site) {
+            super(site);
+        }
+
+        abstract boolean test(double left, double right);
+
+        @Override
+        Object execute(Interpreter interpreter) {
+            double left;
+            try {
+                left = number(interpreter, site.left);
+            } catch (UnexpectedResult e) {
+                Object right = interpreter.evaluate(site.right);
+                return deoptimize(interpreter, e.value, right);
+            }
+
+            double right;
+            try {
+                right = number(interpreter, site.right);
+            } catch (UnexpectedResult e) {
+                return deoptimize(interpreter, left, e.value);
+            }
+
+            return test(left, right) ? Boolean.TRUE : Boolean.FALSE;
+        }
+    }
+
+    static final class NumberGreater extends Comparison {
+        NumberGreater(Expr.Binary site) { super(site); }
+        @Override boolean test(double left, double right) { return left > right; }
+    }
+
+    static final class NumberGreaterEqual extends Comparison {
+        NumberGreaterEqual(Expr.Binary site) { super(site); }
+        @Override boolean test(double left, double right) { return left >= right; }
+    }
+
+    static final class NumberLess extends Comparison {
+        NumberLess(Expr.Binary site) { super(site); }
+        @Override boolean test(double left, double right) { return left < right; }
+    }
+
+    static final class NumberLessEqual extends Comparison {
+        NumberLessEqual(Expr.Binary site) { super(site); }
+        @Override boolean test(double left, double right) { return left <= right; }
+    }
+
+    // Same as Double.equals(): NaN equals itself, 0.0 differs from -0.0
+    static final class NumberEqual extends Comparison {
+        NumberEqual(Expr.Binary site) { super(site); }
+        @Override boolean test(double left, double right) {
+            return Double.doubleToLongBits(left) == Double.doubleToLongBits(right);
+        }
+    }
+
+    static final class NumberNotEqual extends Comparison {
+        NumberNotEqual(Expr.Binary site) { super(site); }
+        @Override boolean test(double left, double right) {
+            return Double.doubleToLongBits(left) != Double.doubleToLongBits(right);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package interpreter;
+
+// How a statement finished. Control flow travels back up the tree as a
+// return value instead of an exception; RETURN leaves its value in
+// Interpreter.returnValue.
+public enum Completion {
+    NORMAL,
+    RETURN,
+    BREAK,
+    CONTINUE
+}
@@ -8,769 +8,899 @@ import java.util.List;
 import java.util.Map;
 import lexer.TokenType;
 import runtime.BuiltinFunction;
+import runtime.BuiltinMethod;
+import runtime.Builtins;
+import runtime.Callers;
 import runtime.Environment;
 import runtime.ExitSignal;
 import runtime.FluxArray;
 import runtime.FluxClass;
 import runtime.FluxFunction;
 import runtime.FluxInstance;
+import runtime.FluxIterator;
 import runtime.FluxString;
-import runtime.NativeFunction;
-import runtime.ReturnSignal;
+import runtime.FunctionCaller;
+import runtime.InlineCache;
+import runtime.Limits;
+import runtime.Numbers;
+import runtime.Tasks;
 
-public class Interpreter {
+public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Completion>, FunctionCaller {
 
-    private Environment environment = new Environment();
+    private final Environment globals;
+    private Environment environment;
     private boolean trace = false;
+    private boolean specialize = false; // rewrite operator sites into typed nodes
+    private Object returnValue;         // value of the last Completion.RETURN
+
+    // Stands in for the value of a tail call until callBody() has run it
+    private static final Object TAIL_CALL = new Object();
+    private FluxFunction pendingFunction;
+    private Environment pendingFrame;
+
+    private int callDepth = 0;
+    private int maxCallDepth = Limits.MAX_CALL_DEPTH;
+
+    private final Tasks.Scope tasks; // shared with forks
 
     public Interpreter() {
-        defineBuiltins();
+        this(false, false);
     }
 
     public Interpreter(boolean trace) {
+        this(trace, false);
+    }
+
+    public Interpreter(boolean trace, boolean specialize) {
+        this.globals = new Environment();
+        this.environment = globals;
         this.trace = trace;
+        this.specialize = specialize;
+        this.tasks = new Tasks.Scope();
         defineBuiltins();
     }
 
-    public void interpret(List<Stmt> statements) {
-        for (Stmt stmt : statements) {
-            execute(stmt);
-        }
+    // Interpreter for another thread (a spawned task or a parallel chunk):
+    // the parent's settings and a snapshot of its globals (see
+    // Tasks.snapshot), so neither sees the other's later assignments
+    private Interpreter(Interpreter parent) {
+        this.globals = Tasks.snapshot(parent.globals);
+        this.environment = globals;
+        this.trace = parent.trace;
+        this.specialize = parent.specialize;
+        this.maxCallDepth = parent.maxCallDepth;
+        this.tasks = parent.tasks;
     }
 
-    // ===================== STATEMENTS =====================
-
-    private void execute(Stmt stmt) {
-
-        if (stmt instanceof Stmt.Print) {
-            Stmt.Print printStmt = (Stmt.Print) stmt;
-
-            StringBuilder output = new StringBuilder();
-            for (Expr expr : printStmt.expressions) {
-                Object value = evaluate(expr);
-                output.append(stringify(value)).append(" ");
-            }
-
-            String result = output.toString().trim();
-            trace("Print " + result);
-            System.out.println(result);
-        }
-        
-        else if (stmt instanceof Stmt.Class) {
-    Stmt.Class cls = (Stmt.Class) stmt;
-    FluxClass klass = new FluxClass(
-        cls.name.lexeme,
-        cls.fields,
-        cls.methods
-    );
-    environment.define(cls.name.lexeme, klass);
-}
+    public Environment getGlobals() {
+        return globals;
+    }
 
+    public void setMaxCallDepth(int maxCallDepth) {
+        this.maxCallDepth = maxCallDepth;
+    }
 
-        else if (stmt instanceof Stmt.Function) {
-    Stmt.Function fn = (Stmt.Function) stmt;
+    // Runs a whole script and waits for the tasks it spawned (see finish()).
+    // Returns false when a top-level return ended the script.
+    public boolean interpret(List<Stmt> statements) {
+        boolean finished = interpretNext(statements);
+        finish();
+        return finished;
+    }
 
-    FluxFunction function = new FluxFunction(
-        fn.name,
-        fn.params,
-        fn.body,
-        environment
-    );
+    // Runs the next statements of a script given piece by piece (streaming
+    // mode, the REPL); call finish() once the script is over
+    public boolean interpretNext(List<Stmt> statements) {
+        Completion completion;
+        FunctionCaller previous = Callers.enter(this);
+        try {
+            completion = executeAll(statements);
+        } catch (StackOverflowError e) {
+            // The Java stack ran out before the call-depth limit was reached
+            throw runtimeError("Stack overflow: calls or expressions nested too deeply.");
+        } finally {
+            Callers.exit(previous);
+        }
+        if (completion == Completion.RETURN) {
+            // A top-level return ends the script, as on the VM
+            returnValue = null;
+            return false;
+        } else if (completion != Completion.NORMAL) {
+            throw strayJump(completion);
+        }
+        return true;
+    }
 
-    environment.define(fn.name.lexeme, function);
+    // Waits for every task the script spawned, awaited or not, then throws
+    // the error of one that failed and was never awaited
+    public void finish() {
+        tasks.join();
+        tasks.check();
+    }
 
-    trace("Define function " + fn.name.lexeme);
-}
+    // Dispatch is a single virtual call on the node
+    private Completion execute(Stmt stmt) {
+        return stmt.accept(this);
+    }
 
-    else if (stmt instanceof Stmt.Expression) {
-    evaluate(((Stmt.Expression) stmt).expression);
-}
-    else if (stmt instanceof Stmt.Break) {
-    throw new runtime.BreakSignal();
-}
+    // Runs statements in order, stopping at the first break, continue or return
+    private Completion executeAll(List<Stmt> statements) {
+        for (Stmt stmt : statements) {
+            Completion completion = execute(stmt);
+            if (completion != Completion.NORMAL) {
+                return completion;
+            }
+        }
+        return Completion.NORMAL;
+    }
 
-else if (stmt instanceof Stmt.Continue) {
-    throw new runtime.ContinueSignal();
-}
+    Object evaluate(Expr expr) {
+        return expr.accept(this);
+    }
 
+    // ===================== STATEMENTS =====================
 
-    else if (stmt instanceof Stmt.Exit) {
-            trace("Exit program");
-            throw new ExitSignal();
+    @Override
+    public Completion visitPrintStmt(Stmt.Print printStmt) {
+        StringBuilder output = new StringBuilder();
+        for (Expr expr : printStmt.expressions) {
+            Object value = evaluate(expr);
+            output.append(stringify(value)).append(" ");
         }
-        else if (stmt instanceof Stmt.Return) {
-    Stmt.Return r = (Stmt.Return) stmt;
-    Object value = r.value == null ? null : evaluate(r.value);
-    throw new ReturnSignal(value);
-}
 
+        String result = output.toString().trim();
+        trace("Print " + result);
+        System.out.println(result);
+        return Completion.NORMAL;
+    }
 
-        else if (stmt instanceof Stmt.Block) {
-            for (Stmt s : ((Stmt.Block) stmt).statements) {
-                execute(s);
-            }
-        }
+    @Override
+    public Completion visitClassStmt(Stmt.Class cls) {
+        FluxClass klass = new FluxClass(
+            cls.name.lexeme(),
+            cls.fields,
+            cls.methods,
+            environment
+        );
+        assign(cls.depth, cls.slot, cls.name.lexeme(), klass);
+        return Completion.NORMAL;
+    }
 
-        else if (stmt instanceof Stmt.While) {
-    Stmt.While whileStmt = (Stmt.While) stmt;
-    trace("Entering while loop");
+    @Override
+    public Completion visitFunctionStmt(Stmt.Function fn) {
+        FluxFunction function = new FluxFunction(
+            fn.name,
+            fn.params,
+            fn.body,
+            fn.layout,
+            environment
+        );
 
-    while (isTruthy(evaluate(whileStmt.condition))) {
-        try {
-            for (Stmt bodyStmt : whileStmt.body) {
-                execute(bodyStmt);
-            }
-        }
-        catch (runtime.ContinueSignal c) {
-            continue;
-        }
-        catch (runtime.BreakSignal b) {
-            break;
-        }
+        assign(fn.depth, fn.slot, fn.name.lexeme(), function);
+
+        trace("Define function " + fn.name.lexeme());
+        return Completion.NORMAL;
     }
 
-    trace("Exiting while loop");
-}
+    @Override
+    public Completion visitExpressionStmt(Stmt.Expression stmt) {
+        evaluate(stmt.expression);
+        return Completion.NORMAL;
+    }
 
+    @Override
+    public Completion visitBreakStmt(Stmt.Break stmt) {
+        return Completion.BREAK;
+    }
 
-        else if (stmt instanceof Stmt.Assignment) {
-            Stmt.Assignment assign = (Stmt.Assignment) stmt;
-            Object value = evaluate(assign.value);
-            environment.define(assign.name.lexeme, value);
-            trace("Assign " + assign.name.lexeme + " = " + value);
-        }
+    @Override
+    public Completion visitContinueStmt(Stmt.Continue stmt) {
+        return Completion.CONTINUE;
+    }
 
-        else if (stmt instanceof Stmt.If) {
-            Stmt.If ifStmt = (Stmt.If) stmt;
-            Object condition = evaluate(ifStmt.condition);
-            trace("Evaluate if condition → " + condition);
+    @Override
+    public Completion visitExitStmt(Stmt.Exit stmt) {
+        trace("Exit program");
+        throw new ExitSignal();
+    }
 
-            if (isTruthy(condition)) {
-                trace("Entering if block");
-                for (Stmt bodyStmt : ifStmt.thenBody) {
-                    execute(bodyStmt);
-                }
-            } else if (ifStmt.elseBody != null) {
-                trace("Entering else block");
-                for (Stmt bodyStmt : ifStmt.elseBody) {
-                    execute(bodyStmt);
-                }
-            }
+    @Override
+    public Completion visitReturnStmt(Stmt.Return r) {
+        if (r.tail) {
+            returnValue = call((Expr.Call) r.value, true);
+        } else {
+            returnValue = r.value == null ? null : evaluate(r.value);
         }
+        return Completion.RETURN;
     }
 
-    // ===================== EXPRESSIONS =====================
+    @Override
+    public Completion visitBlockStmt(Stmt.Block block) {
+        return executeAll(block.statements);
+    }
 
-    private Object evaluate(Expr expr) {
+    @Override
+    public Completion visitWhileStmt(Stmt.While whileStmt) {
+        trace("Entering while loop");
 
-        if (expr instanceof Expr.Literal) {
-            Object value = ((Expr.Literal) expr).value;
-            if (value == null) {
-                return null;
+        while (isTruthy(evaluate(whileStmt.condition))) {
+            Completion completion = executeAll(whileStmt.body);
+            if (completion == Completion.BREAK) {
+                break;
             }
-            if (value instanceof String) {
-                return new FluxString((String) value);
+            if (completion == Completion.RETURN) {
+                return completion;
             }
-            return value;
         }
 
-        if (expr instanceof Expr.Variable) {
-            return environment.get(((Expr.Variable) expr).name.lexeme);
-        }
+        trace("Exiting while loop");
+        return Completion.NORMAL;
+    }
 
-        if (expr instanceof Expr.Array) {
-            List<Object> values = new ArrayList<>();
-            for (Expr e : ((Expr.Array) expr).elements) {
-                values.add(evaluate(e));
+    @Override
+    public Completion visitForStmt(Stmt.For forStmt) {
+        Object start = evaluate(forStmt.start);
+        Object end = evaluate(forStmt.end);
+        if (!(start instanceof Double) || !(end instanceof Double)) {
+            throw runtimeError("For loop bounds must be numbers.");
+        }
+        double limit = (double) end;
+        trace("Entering for loop");
+
+        if (forStmt.counted && forStmt.slot >= 0) {
+            // Nothing else writes the variable: count in a local and publish each value.
+            // The box is stored once per step so reads in the body stay allocation-free.
+            Environment frame = forStmt.depth < 0 ? globals : environment.ancestor(forStmt.depth);
+            double i = (double) start;
+            for (; i <= limit; i++) {
+                frame.set(forStmt.slot, i);
+                Completion completion = executeAll(forStmt.body);
+                if (completion == Completion.BREAK) {
+                    break;
+                }
+                if (completion == Completion.RETURN) {
+                    return completion;
+                }
             }
-            return new FluxArray(values);
-        }
-
-        if (expr instanceof Expr.Map) {
-            Map<Object, Object> map = new HashMap<>();
-            List<Expr> keys = ((Expr.Map) expr).keys;
-            List<Expr> values = ((Expr.Map) expr).values;
-            for (int i = 0; i < keys.size(); i++) {
-                Object key = evaluate(keys.get(i));
-                if (key instanceof FluxString) {
-                    key = ((FluxString) key).getValue();
+            frame.set(forStmt.slot, i); // one past the end, or unchanged after break
+        } else {
+            // The body may rebind the variable: read it back before every step
+            String name = forStmt.name.lexeme();
+            assign(forStmt.depth, forStmt.slot, name, start);
+            while (loopVariable(forStmt) <= limit) {
+                Completion completion = executeAll(forStmt.body);
+                if (completion == Completion.BREAK) {
+                    break;
+                }
+                if (completion == Completion.RETURN) {
+                    return completion;
                 }
-                Object value = evaluate(values.get(i));
-                map.put(key, value);
+                Object next = binary(TokenType.PLUS, lookUp(forStmt.depth, forStmt.slot, name), 1.0);
+                assign(forStmt.depth, forStmt.slot, name, next);
             }
-            return map;
         }
 
-        if (expr instanceof Expr.Lambda) {
-    Expr.Lambda lambda = (Expr.Lambda) expr;
-
-    return new FluxFunction(
-        null,                // no name
-        lambda.params,
-        lambda.body,
-        environment          // closure captured here
-    );
-}
-        if (expr instanceof Expr.This) {
-    return environment.get("this");
-}
-
-
-
-        if (expr instanceof Expr.Index) {
-            Object arrayObj = evaluate(((Expr.Index) expr).array);
-            Object indexObj = evaluate(((Expr.Index) expr).index);
+        trace("Exiting for loop");
+        return Completion.NORMAL;
+    }
 
-            if (arrayObj instanceof FluxArray) {
-                int idx = ((Double) indexObj).intValue();
-                List<?> list = ((FluxArray) arrayObj).getValue();
-                if (idx < 0 || idx >= list.size()) {
-                    throw new RuntimeException("Runtime Error: Array index out of bounds.");
-                }
-                return list.get(idx);
-            } else if (arrayObj instanceof List) {
-                int idx = ((Double) indexObj).intValue();
-                List<?> list = (List<?>) arrayObj;
-                if (idx < 0 || idx >= list.size()) {
-                    throw new RuntimeException("Runtime Error: Array index out of bounds.");
-                }
-                return list.get(idx);
-            } else if (arrayObj instanceof Map) {
-                Object key = indexObj;
-                if (key instanceof FluxString) {
-                    key = ((FluxString) key).getValue();
-                }
-                return ((Map<?, ?>) arrayObj).get(key);
-            } else {
-                throw runtimeError("Tried to index a non-array, non-map value.");
+    @Override
+    public Completion visitForInStmt(Stmt.ForIn forIn) {
+        FluxIterator elements = FluxIterator.of(evaluate(forIn.iterable));
+        String name = forIn.name.lexeme();
+        trace("Entering for-in loop");
+
+        while (elements.hasNext()) {
+            assign(forIn.depth, forIn.slot, name, elements.next());
+            Completion completion = executeAll(forIn.body);
+            if (completion == Completion.BREAK) {
+                break;
+            }
+            if (completion == Completion.RETURN) {
+                return completion;
             }
         }
-        if (expr instanceof Expr.Logical) {
-    Expr.Logical logical = (Expr.Logical) expr;
 
-    if (logical.operator.type == TokenType.NOT) {
-        Object right = evaluate(logical.right);
-        return !isTruthy(right);
+        trace("Exiting for-in loop");
+        return Completion.NORMAL;
     }
 
-    Object left = evaluate(logical.left);
-
-    if (logical.operator.type == TokenType.OR) {
-        if (isTruthy(left)) return true; // short-circuit
+    private double loopVariable(Stmt.For forStmt) {
+        Object value = lookUp(forStmt.depth, forStmt.slot, forStmt.name.lexeme());
+        if (value instanceof Double) return (double) value;
+        throw runtimeError("For loop variable must be a number.");
     }
 
-    if (logical.operator.type == TokenType.AND) {
-        if (!isTruthy(left)) return false; // short-circuit
+    @Override
+    public Completion visitAssignmentStmt(Stmt.Assignment assign) {
+        Object value = evaluate(assign.value);
+        assign(assign.depth, assign.slot, assign.name.lexeme(), value);
+        if (trace) trace("Assign " + assign.name.lexeme() + " = " + value);
+        return Completion.NORMAL;
     }
 
-    Object right = evaluate(logical.right);
-    return isTruthy(right);
-}
+    @Override
+    public Completion visitIfStmt(Stmt.If ifStmt) {
+        Object condition = evaluate(ifStmt.condition);
+        if (trace) trace("Evaluate if condition → " + condition);
 
-    // ---------------- PROPERTY ACCESS ----------------
-if (expr instanceof Expr.Get) {
-    Expr.Get get = (Expr.Get) expr;
-    Object object = evaluate(get.object);
+        if (isTruthy(condition)) {
+            trace("Entering if block");
+            return executeAll(ifStmt.thenBody);
+        } else if (ifStmt.elseBody != null) {
+            trace("Entering else block");
+            return executeAll(ifStmt.elseBody);
+        }
+        return Completion.NORMAL;
+    }
 
-    if (object instanceof FluxInstance) {
-        Object value = ((FluxInstance) object).get(get.name);
+    // ===================== EXPRESSIONS =====================
 
-        // ⭐⭐ THIS IS THE MISSING PIECE ⭐⭐
-        if (value instanceof FluxFunction) {
-            return ((FluxFunction) value).bind((FluxInstance) object);
+    @Override
+    public Object visitLiteralExpr(Expr.Literal expr) {
+        Object value = expr.value;
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof String) {
+            return new FluxString((String) value);
         }
-
         return value;
-    } else if (object instanceof FluxString) {
-        return ((FluxString) object).get(get.name);
-    } else if (object instanceof FluxArray) {
-        return ((FluxArray) object).get(get.name);
     }
 
-    throw runtimeError("Only instances, strings, and arrays have properties.");
-}
+    @Override
+    public Object visitVariableExpr(Expr.Variable variable) {
+        return lookUp(variable.depth, variable.slot, variable.name.lexeme());
+    }
 
-// ---------------- PROPERTY SET ----------------
-if (expr instanceof Expr.Set) {
-    Expr.Set set = (Expr.Set) expr;
-    Object object = evaluate(set.object);
+    @Override
+    public Object visitArrayExpr(Expr.Array expr) {
+        List<Object> values = new ArrayList<>();
+        for (Expr e : expr.elements) {
+            values.add(evaluate(e));
+        }
+        return new FluxArray(values);
+    }
 
-    if (!(object instanceof runtime.FluxInstance)) {
-        throw runtimeError("Only instances have fields.");
+    @Override
+    public Object visitMapExpr(Expr.Map expr) {
+        Map<Object, Object> map = new HashMap<>();
+        List<Expr> keys = expr.keys;
+        List<Expr> values = expr.values;
+        for (int i = 0; i < keys.size(); i++) {
+            Object key = evaluate(keys.get(i));
+            if (key instanceof FluxString) {
+                key = ((FluxString) key).getValue();
+            }
+            Object value = evaluate(values.get(i));
+            map.put(key, value);
+        }
+        return map;
     }
 
-    Object value = evaluate(set.value);
-    ((runtime.FluxInstance) object).set(set.name, value);
-    return value;
-}
+    @Override
+    public Object visitLambdaExpr(Expr.Lambda lambda) {
+        return new FluxFunction(
+            null,                // no name
+            lambda.params,
+            lambda.body,
+            lambda.layout,
+            environment          // closure captured here
+        );
+    }
 
+    @Override
+    public Object visitThisExpr(Expr.This self) {
+        return lookUp(self.depth, self.slot, "this");
+    }
+
+    @Override
+    public Object visitIndexExpr(Expr.Index expr) {
+        Object arrayObj = evaluate(expr.array);
+        Object indexObj = evaluate(expr.index);
+
+        if (arrayObj instanceof FluxArray) {
+            int idx = ((Double) indexObj).intValue();
+            return ((FluxArray) arrayObj).get(idx);
+        } else if (arrayObj instanceof List) {
+            int idx = ((Double) indexObj).intValue();
+            List<?> list = (List<?>) arrayObj;
+            if (idx < 0 || idx >= list.size()) {
+                throw new RuntimeException("Runtime Error: Array index out of bounds.");
+            }
+            return list.get(idx);
+        } else if (arrayObj instanceof Map) {
+            Object key = indexObj;
+            if (key instanceof FluxString) {
+                key = ((FluxString) key).getValue();
+            }
+            return ((Map<?, ?>) arrayObj).get(key);
+        } else {
+            throw runtimeError("Tried to index a non-array, non-map value.");
+        }
+    }
 
-        if (expr instanceof Expr.Call) {
-    Expr.Call call = (Expr.Call) expr;
+    @Override
+    public Object visitLogicalExpr(Expr.Logical logical) {
+        if (logical.operator.type == TokenType.NOT) {
+            Object right = evaluate(logical.right);
+            return !isTruthy(right);
+        }
 
-    Object callee = evaluate(call.callee);
+        Object left = evaluate(logical.left);
 
-    // ---------- CLASS CONSTRUCTOR ----------
-    if (callee instanceof FluxClass) {
-        FluxInstance instance = ((FluxClass) callee).instantiate();
+        if (logical.operator.type == TokenType.OR) {
+            if (isTruthy(left)) return true; // short-circuit
+        }
 
-        // Call init if exists
-        FluxFunction init = ((FluxClass) callee).findMethod("init");
-        if (init != null) {
-            FluxFunction boundInit = init.bind(instance);
-            List<Object> args = new ArrayList<>(); // no args for init
-            Environment localEnv = new Environment(boundInit.getClosure());
-            Object result = null;
-            Environment previous = this.environment;
-            try {
-                this.environment = localEnv;
-                for (Stmt stmt : boundInit.getBody()) {
-                    execute(stmt);
-                }
-            } catch (ReturnSignal r) {
-                result = r.value;
-            } finally {
-                this.environment = previous;
-            }
+        if (logical.operator.type == TokenType.AND) {
+            if (!isTruthy(left)) return false; // short-circuit
         }
 
-        return instance;
+        Object right = evaluate(logical.right);
+        return isTruthy(right);
     }
 
-    // ---------- BUILTIN FUNCTION ----------
-    if (callee instanceof BuiltinFunction) {
-        BuiltinFunction fn = (BuiltinFunction) callee;
-        List<Object> args = new ArrayList<>();
-        for (Expr arg : call.arguments) {
-            args.add(evaluate(arg));
-        }
-        return fn.call(args);
+    // ---------------- PROPERTY ACCESS ----------------
+    @Override
+    public Object visitGetExpr(Expr.Get get) {
+        return property(get, evaluate(get.object));
     }
 
-    // ---------- USER FUNCTION / METHOD ----------
-    if (!(callee instanceof FluxFunction)) {
-        throw runtimeError("Can only call functions and classes.");
+    private Object property(Expr.Get get, Object object) {
+        if (object instanceof FluxInstance) {
+            // Methods come back already bound to the instance
+            FluxInstance instance = (FluxInstance) object;
+            InlineCache.Entry entry = get.cache.lookup(instance.getShape(), get.name.symbol);
+            if (entry.slot >= 0) {
+                return instance.getField(entry.slot);
+            }
+            return method(get, entry).bind(instance);
+        }
+        return propertyOf(get, object);
     }
 
-    FluxFunction function = (FluxFunction) callee;
+    private Object propertyOf(Expr.Get get, Object object) {
+        if (object instanceof FluxString) {
+            return ((FluxString) object).get(get.name);
+        } else if (object instanceof FluxArray) {
+            return ((FluxArray) object).get(get.name);
+        }
 
-    if (call.arguments.size() != function.getParams().size()) {
-        throw runtimeError(
-            "Expected " + function.getParams().size() +
-            " arguments but got " + call.arguments.size() + "."
-        );
+        throw runtimeError("Only instances, strings, and arrays have properties.");
     }
 
-    Environment localEnv = new Environment(function.getClosure());
+    // ---------------- PROPERTY SET ----------------
+    @Override
+    public Object visitSetExpr(Expr.Set set) {
+        Object object = evaluate(set.object);
 
-    for (int i = 0; i < function.getParams().size(); i++) {
-        String param = function.getParams().get(i).lexeme;
-        Object value = evaluate(call.arguments.get(i));
-        localEnv.define(param, value);
-    }
+        if (!(object instanceof runtime.FluxInstance)) {
+            throw runtimeError("Only instances have fields.");
+        }
 
-    Object result = null;
-    Environment previous = this.environment;
+        Object value = evaluate(set.value);
+        FluxInstance instance = (FluxInstance) object;
 
-    try {
-        this.environment = localEnv;
-        for (Stmt stmt : function.getBody()) {
-            execute(stmt);
+        // Shape is read after the value: evaluating it may have added fields
+        InlineCache.Entry entry = set.cache.lookup(instance.getShape(), set.name.symbol);
+        if (entry.slot >= 0) {
+            instance.setField(entry.slot, value);
+        } else {
+            instance.set(set.name, value);
         }
+        return value;
     }
-    catch (ReturnSignal r) {
-        result = r.value;
-    }
-    finally {
-        this.environment = previous;
+
+    @Override
+    public Object visitCallExpr(Expr.Call call) {
+        return call(call, false);
     }
 
-    return result;
-}
+    // With `tail` set, a call to a Flux function is not run here: its frame is
+    // left in pendingFunction/pendingFrame and TAIL_CALL is returned instead,
+    // so the enclosing callBody() can run it without growing the Java stack
+    private Object call(Expr.Call call, boolean tail) {
+        // ---------- METHOD CALL ----------
+        // obj.method(args) runs the method with `this` set directly, so no
+        // bound function is allocated just to be called once
+        if (call.callee instanceof Expr.Get) {
+            Expr.Get get = (Expr.Get) call.callee;
+            Object object = evaluate(get.object);
+            if (object instanceof FluxInstance) {
+                FluxInstance instance = (FluxInstance) object;
+                InlineCache.Entry entry = get.cache.lookup(instance.getShape(), get.name.symbol);
+                if (entry.slot >= 0) {
+                    return call(instance.getField(entry.slot), call.arguments, tail);
+                }
+                return invoke(method(get, entry), instance, call.arguments, tail);
+            }
+            if (object instanceof FluxString) {
+                return invokeBuiltin(FluxString.method(get.name.symbol), (FluxString) object, call.arguments);
+            }
+            if (object instanceof FluxArray) {
+                return invokeBuiltin(FluxArray.method(get.name.symbol), (FluxArray) object, call.arguments);
+            }
+            return call(propertyOf(get, object), call.arguments, tail);
+        }
 
+        return call(evaluate(call.callee), call.arguments, tail);
+    }
 
-if (expr instanceof Expr.Get) {
-    Expr.Get get = (Expr.Get) expr;
-    Object object = evaluate(get.object);
+    private Object call(Object callee, List<Expr> arguments, boolean tail) {
+        // ---------- CLASS CONSTRUCTOR ----------
+        if (callee instanceof FluxClass) {
+            return construct((FluxClass) callee);
+        }
 
-    if (object instanceof FluxInstance) {
-        Object value = ((FluxInstance) object).get(get.name);
+        // ---------- BUILTIN FUNCTION ----------
+        if (callee instanceof BuiltinFunction) {
+            BuiltinFunction fn = (BuiltinFunction) callee;
+            List<Object> args = new ArrayList<>();
+            for (Expr arg : arguments) {
+                args.add(evaluate(arg));
+            }
+            return fn.call(args);
+        }
 
-        // ⭐⭐ THIS IS THE MISSING PIECE ⭐⭐
-        if (value instanceof FluxFunction) {
-            return ((FluxFunction) value).bind((FluxInstance) object);
+        // ---------- USER FUNCTION / METHOD ----------
+        if (!(callee instanceof FluxFunction)) {
+            throw runtimeError("Can only call functions and classes.");
         }
 
-        return value;
+        FluxFunction function = (FluxFunction) callee;
+        return invoke(function, function.getReceiver(), arguments, tail);
     }
 
-    throw runtimeError("Only instances have properties.");
-}
+    private FluxInstance construct(FluxClass klass) {
+        FluxInstance instance = klass.instantiate();
 
+        // Call init if exists
+        FluxFunction init = klass.initializer();
+        if (init != null) {
+            Environment localEnv = init.newFrame(instance); // no args for init
+            callBody(init, localEnv);
+        }
 
-if (expr instanceof Expr.Set) {
-    Expr.Set set = (Expr.Set) expr;
-    Object object = evaluate(set.object);
-
-    if (!(object instanceof runtime.FluxInstance)) {
-        throw runtimeError("Only instances have fields.");
+        return instance;
     }
 
-    Object value = evaluate(set.value);
-    ((runtime.FluxInstance) object).set(set.name, value);
-    return value;
-}
-
-if (expr instanceof Expr.Binary) {
-    Expr.Binary binary = (Expr.Binary) expr;
-    Object left = evaluate(binary.left);
-    Object right = evaluate(binary.right);
-
-    Object result;
+    // Calls a function, or a method on `receiver`, with evaluated arguments
+    private Object invoke(FluxFunction function, FluxInstance receiver, List<Expr> arguments, boolean tail) {
+        if (arguments.size() != function.getParams().size()) {
+            throw runtimeError(
+                "Expected " + function.getParams().size() +
+                " arguments but got " + arguments.size() + "."
+            );
+        }
 
-    switch (binary.operator.type) {
+        Environment localEnv = function.newFrame(receiver);
+        int firstSlot = function.firstParamSlot(receiver);
 
-    case PLUS:
-        // Number addition OR string concatenation
-        if ((left instanceof Double || left == null) && right instanceof Double) {
-            double l = left == null ? 0.0 : (double) left;
-            result = l + (double) right;
-        } else {
-            result = stringify(left) + stringify(right);
-        }
-        break;
-
-    case MINUS:
-        checkNumberOperands(left, right);
-        double l = left == null ? 0.0 : (double) left;
-        double r = right == null ? 0.0 : (double) right;
-        result = l - r;
-        break;
-
-    case STAR:
-        checkNumberOperands(left, right);
-        l = left == null ? 0.0 : (double) left;
-        r = right == null ? 0.0 : (double) right;
-        result = l * r;
-        break;
-
-    case SLASH:
-        checkNumberOperands(left, right);
-        l = left == null ? 0.0 : (double) left;
-        r = right == null ? 0.0 : (double) right;
-        result = l / r;
-        break;
-
-    case PERCENT:
-        checkNumberOperands(left, right);
-        l = left == null ? 0.0 : (double) left;
-        r = right == null ? 0.0 : (double) right;
-        result = l % r;
-        break;
-
-    case GREATER:
-        l = left == null ? 0.0 : (double) left;
-        r = right == null ? 0.0 : (double) right;
-        result = l > r;
-        break;
-
-    case GREATER_EQUAL:
-        l = left == null ? 0.0 : (double) left;
-        r = right == null ? 0.0 : (double) right;
-        result = l >= r;
-        break;
-
-    case LESS:
-        l = left == null ? 0.0 : (double) left;
-        r = right == null ? 0.0 : (double) right;
-        result = l < r;
-        break;
-
-    case LESS_EQUAL:
-        l = left == null ? 0.0 : (double) left;
-        r = right == null ? 0.0 : (double) right;
-        result = l <= r;
-        break;
-
-    case EQUAL_EQUAL:
-        if (left == null && right == null) {
-            result = true;
-        } else if (left == null || right == null) {
-            result = false;
-        } else {
-            result = left.equals(right);
+        for (int i = 0; i < function.getParams().size(); i++) {
+            Object value = evaluate(arguments.get(i));
+            localEnv.set(firstSlot + i, value);
         }
-        break;
 
-    case BANG_EQUAL:
-        if (left == null && right == null) {
-            result = false;
-        } else if (left == null || right == null) {
-            result = true;
-        } else {
-            result = !left.equals(right);
+        if (tail) {
+            pendingFunction = function;
+            pendingFrame = localEnv;
+            return TAIL_CALL;
         }
-        break;
-
-    default:
-        throw new RuntimeException("Runtime Error: Unknown operator.");
-}
+        return callBody(function, localEnv);
+    }
 
+    // ---------------- TASKS ----------------
+    // The callee, its receiver and the arguments are evaluated here, on the
+    // spawning thread; the task gets copies of anything mutable among them
+    @Override
+    public Object visitSpawnExpr(Expr.Spawn spawn) {
+        Expr.Call call = spawn.call;
+        Object callee = call.callee instanceof Expr.Get
+            ? property((Expr.Get) call.callee, Tasks.isolate(evaluate(((Expr.Get) call.callee).object)))
+            : Tasks.isolate(evaluate(call.callee));
 
-    trace("Evaluate " + left + " " + binary.operator.lexeme + " → " + result);
-    return result;
-}
+        List<Object> args = new ArrayList<>();
+        for (Expr arg : call.arguments) {
+            args.add(Tasks.isolate(evaluate(arg)));
+        }
 
-throw new RuntimeException("Runtime Error: Unknown expression.");
+        FunctionCaller task = fork();
+        return Tasks.start(() -> Callers.call(task, callee, args), tasks);
+    }
 
+    @Override
+    public Object visitAwaitExpr(Expr.Await await) {
+        return Tasks.await(evaluate(await.task));
     }
 
-    // ===================== HELPERS =====================
+    // Calls `callee` with arguments already evaluated: spawned tasks, and
+    // builtins such as map() that take a function
+    @Override
+    public Object call(Object callee, List<Object> args) {
+        try {
+            if (callee instanceof FluxClass) {
+                return construct((FluxClass) callee);
+            }
+            if (callee instanceof BuiltinFunction) {
+                return ((BuiltinFunction) callee).call(args);
+            }
+            if (!(callee instanceof FluxFunction)) {
+                throw runtimeError("Can only call functions and classes.");
+            }
 
-    private boolean isTruthy(Object value) {
-        if (value == null) return false;
-        if (value instanceof Boolean) return (boolean) value;
-        if (value instanceof Double) return (double) value != 0;
-        return true;
+            FluxFunction function = (FluxFunction) callee;
+            if (args.size() != function.getParams().size()) {
+                throw runtimeError(
+                    "Expected " + function.getParams().size() +
+                    " arguments but got " + args.size() + "."
+                );
+            }
+            FluxInstance receiver = function.getReceiver();
+            Environment localEnv = function.newFrame(receiver);
+            int firstSlot = function.firstParamSlot(receiver);
+            for (int i = 0; i < args.size(); i++) {
+                localEnv.set(firstSlot + i, args.get(i));
+            }
+            return callBody(function, localEnv);
+        } catch (StackOverflowError e) {
+            throw runtimeError("Stack overflow: calls or expressions nested too deeply.");
+        }
     }
 
-    private String stringify(Object value) {
-    if (value == null) return "null";
-    if (value instanceof FluxFunction) return "<function>";
-    return value.toString();
-}
+    @Override
+    public FunctionCaller fork() {
+        return new Interpreter(this);
+    }
 
+    // Builtin string/array method called in place: no bound function, no argument list
+    private <T> Object invokeBuiltin(BuiltinMethod<T> method, T self, List<Expr> arguments) {
+        int argc = arguments.size();
+        if (argc > 2) {
+            List<Object> args = new ArrayList<>();
+            for (Expr arg : arguments) {
+                args.add(evaluate(arg));
+            }
+            return method.invoke(self, args);
+        }
 
-    private void checkNumberOperands(Object left, Object right) {
-        if ((left instanceof Double || left == null) && (right instanceof Double || right == null)) return;
-        throw new RuntimeException("Runtime Error: Operands must be numbers.");
+        Object first = argc > 0 ? evaluate(arguments.get(0)) : null;
+        Object second = argc > 1 ? evaluate(arguments.get(1)) : null;
+        return method.invoke(self, argc, first, second);
     }
 
-    private void trace(String message) {
-        if (trace) {
-            System.out.println("[TRACE] " + message);
+    // Method found by the site's inline cache when the instance has no such field
+    private FluxFunction method(Expr.Get get, InlineCache.Entry entry) {
+        if (entry.method == null) {
+            throw runtimeError("Undefined property '" + get.name.lexeme() + "'.");
         }
+        return entry.method;
     }
-    private void executeBlock(List<Stmt> statements) {
-    for (Stmt stmt : statements) {
-        execute(stmt);
-    }
-}
-
-    private void defineBuiltins() {
 
-    // len(array)
-    environment.define("len", new BuiltinFunction("len", new NativeFunction() {
-        @Override
-        public Object call(List<Object> arguments) {
-            Object value = arguments.get(0);
-            if (value instanceof List) {
-                return (double) ((List<?>) value).size();
-            }
-            throw runtimeError("len() expects an array.");
+    // Runs a function body in its frame and yields the returned value.
+    // Tail calls made by the body are run here in turn, in the same Java frame.
+    private Object callBody(FluxFunction function, Environment frame) {
+        if (callDepth == maxCallDepth) {
+            throw runtimeError("Stack overflow: more than " + maxCallDepth + " nested calls.");
         }
 
-        @Override
-        public int arity() {
-            return 1;
-        }
-    }));
+        Environment previous = this.environment;
+        callDepth++;
 
+        try {
+            while (true) {
+                this.environment = frame;
+                Completion completion = executeAll(function.getBody());
 
-    // type(value)
-    environment.define("type", new BuiltinFunction("type", new NativeFunction() {
-        @Override
-        public Object call(List<Object> arguments) {
-            Object v = arguments.get(0);
-            if (v instanceof Double) return "number";
-            if (v instanceof FluxString) return "string";
-            if (v instanceof Boolean) return "boolean";
-            if (v instanceof List) return "array";
-            if (v instanceof Map) return "map";
-            if (v instanceof FluxFunction) return "function";
-            return "unknown";
+                if (completion == Completion.NORMAL) {
+                    return null;
+                }
+                if (completion != Completion.RETURN) {
+                    throw strayJump(completion);
+                }
+
+                Object result = returnValue;
+                returnValue = null;
+                if (result != TAIL_CALL) {
+                    return result;
+                }
+
+                function = pendingFunction;
+                frame = pendingFrame;
+                pendingFunction = null;
+                pendingFrame = null;
+            }
         }
+        finally {
+            this.environment = previous;
+            callDepth--;
+        }
+    }
 
-        @Override
-        public int arity() {
-            return 1;
+    @Override
+    public Object visitBinaryExpr(Expr.Binary binary) {
+        if (specialize) {
+            return BinaryNode.of(binary).execute(this);
         }
-    }));
 
+        Object left = evaluate(binary.left);
+        Object right = evaluate(binary.right);
+        Object result = binary(binary.operator.type, left, right);
+
+        if (trace) trace("Evaluate " + left + " " + binary.operator.lexeme() + " → " + result);
+        return result;
+    }
+
+    // Generic operator semantics, shared with the specialized nodes
+    Object binary(TokenType operator, Object left, Object right) {
+        Object result;
 
-    // range(start, end)
-    environment.define("range", new BuiltinFunction("range", new NativeFunction() {
-        @Override
-        public Object call(List<Object> arguments) {
-            double start = (double) arguments.get(0);
-            double end = (double) arguments.get(1);
+        switch (operator) {
 
-            List<Object> result = new ArrayList<>();
-            for (int i = (int) start; i < (int) end; i++) {
-                result.add((double) i);
+        case PLUS:
+            // Number addition OR string concatenation
+            if ((left instanceof Double || left == null) && right instanceof Double) {
+                double l = left == null ? 0.0 : (double) left;
+                result = l + (double) right;
+            } else {
+                result = concat(left, right);
             }
-            return new FluxArray(result);
-        }
+            break;
 
-        @Override
-        public int arity() {
-            return 2;
-        }
-    }));
+        case MINUS:
+            checkNumberOperands(left, right);
+            double l = left == null ? 0.0 : (double) left;
+            double r = right == null ? 0.0 : (double) right;
+            result = l - r;
+            break;
 
-    // floor(number)
-    environment.define("floor", new BuiltinFunction("floor", new NativeFunction() {
-        @Override
-        public Object call(List<Object> arguments) {
-            double value = (double) arguments.get(0);
-            return (double) Math.floor(value);
-        }
+        case STAR:
+            checkNumberOperands(left, right);
+            l = left == null ? 0.0 : (double) left;
+            r = right == null ? 0.0 : (double) right;
+            result = l * r;
+            break;
 
-        @Override
-        public int arity() {
-            return 1;
-        }
-    }));
+        case SLASH:
+            checkNumberOperands(left, right);
+            l = left == null ? 0.0 : (double) left;
+            r = right == null ? 0.0 : (double) right;
+            result = l / r;
+            break;
 
-    // ceil(number)
-    environment.define("ceil", new BuiltinFunction("ceil", new NativeFunction() {
-        @Override
-        public Object call(List<Object> arguments) {
-            double value = (double) arguments.get(0);
-            return (double) Math.ceil(value);
-        }
+        case PERCENT:
+            checkNumberOperands(left, right);
+            l = left == null ? 0.0 : (double) left;
+            r = right == null ? 0.0 : (double) right;
+            result = Numbers.modulo(l, r);
+            break;
 
-        @Override
-        public int arity() {
-            return 1;
-        }
-    }));
+        case GREATER:
+            l = left == null ? 0.0 : (double) left;
+            r = right == null ? 0.0 : (double) right;
+            result = l > r;
+            break;
 
-    // round(number)
-    environment.define("round", new BuiltinFunction("round", new NativeFunction() {
-        @Override
-        public Object call(List<Object> arguments) {
-            double value = (double) arguments.get(0);
-            return (double) Math.round(value);
-        }
+        case GREATER_EQUAL:
+            l = left == null ? 0.0 : (double) left;
+            r = right == null ? 0.0 : (double) right;
+            result = l >= r;
+            break;
 
-        @Override
-        public int arity() {
-            return 1;
-        }
-    }));
+        case LESS:
+            l = left == null ? 0.0 : (double) left;
+            r = right == null ? 0.0 : (double) right;
+            result = l < r;
+            break;
 
-    // sqrt(number)
-    environment.define("sqrt", new BuiltinFunction("sqrt", new NativeFunction() {
-        @Override
-        public Object call(List<Object> arguments) {
-            double value = (double) arguments.get(0);
-            return Math.sqrt(value);
-        }
+        case LESS_EQUAL:
+            l = left == null ? 0.0 : (double) left;
+            r = right == null ? 0.0 : (double) right;
+            result = l <= r;
+            break;
 
-        @Override
-        public int arity() {
-            return 1;
-        }
-    }));
+        case EQUAL_EQUAL:
+            if (left == null && right == null) {
+                result = true;
+            } else if (left == null || right == null) {
+                result = false;
+            } else {
+                result = left.equals(right);
+            }
+            break;
 
-    // abs(number)
-    environment.define("abs", new BuiltinFunction("abs", new NativeFunction() {
-        @Override
-        public Object call(List<Object> arguments) {
-            double value = (double) arguments.get(0);
-            return Math.abs(value);
-        }
+        case BANG_EQUAL:
+            if (left == null && right == null) {
+                result = false;
+            } else if (left == null || right == null) {
+                result = true;
+            } else {
+                result = !left.equals(right);
+            }
+            break;
 
-        @Override
-        public int arity() {
-            return 1;
+        default:
+            throw new RuntimeException("Runtime Error: Unknown operator.");
         }
-    }));
 
-    // min(a, b)
-    environment.define("min", new BuiltinFunction("min", new NativeFunction() {
-        @Override
-        public Object call(List<Object> arguments) {
-            double a = (double) arguments.get(0);
-            double b = (double) arguments.get(1);
-            return Math.min(a, b);
-        }
+        return result;
+    }
 
-        @Override
-        public int arity() {
-            return 2;
-        }
-    }));
+    // ===================== VARIABLES =====================
 
-    // max(a, b)
-    environment.define("max", new BuiltinFunction("max", new NativeFunction() {
-        @Override
-        public Object call(List<Object> arguments) {
-            double a = (double) arguments.get(0);
-            double b = (double) arguments.get(1);
-            return Math.max(a, b);
+    private Object lookUp(int depth, int slot, String name) {
+        if (slot < 0) {
+            return environment.get(name);
         }
 
-        @Override
-        public int arity() {
-            return 2;
+        Environment frame = depth < 0 ? globals : environment.ancestor(depth);
+        Object value = frame.get(slot);
+        if (value == Environment.UNDEFINED) {
+            // Local not assigned yet: fall back to the enclosing scopes
+            return environment.get(name);
         }
-    }));
+        return value;
+    }
 
-    // toNumber(value)
-    environment.define("toNumber", new BuiltinFunction("toNumber", new NativeFunction() {
-        @Override
-        public Object call(List<Object> arguments) {
-            Object value = arguments.get(0);
-            if (value instanceof Double) return value;
-            if (value instanceof Boolean) return ((Boolean) value) ? 1.0 : 0.0;
-            if (value instanceof FluxString) {
-                try {
-                    return Double.parseDouble(((FluxString) value).getValue());
-                } catch (NumberFormatException e) {
-                    throw new RuntimeException("[Flux Runtime Error]\nCannot convert string to number.");
-                }
-            }
-            throw new RuntimeException("[Flux Runtime Error]\nCannot convert value to number.");
+    private void assign(int depth, int slot, String name, Object value) {
+        if (slot < 0) {
+            environment.define(name, value);
+        } else if (depth < 0) {
+            globals.set(slot, value);
+        } else {
+            environment.ancestor(depth).set(slot, value);
         }
+    }
 
-        @Override
-        public int arity() {
-            return 1;
-        }
-    }));
+    // ===================== HELPERS =====================
 
-    // toString(value)
-    environment.define("toString", new BuiltinFunction("toString", new NativeFunction() {
-        @Override
-        public Object call(List<Object> arguments) {
-            Object value = arguments.get(0);
-            if (value == null) return new FluxString("null");
-            if (value instanceof FluxString) return value;
-            if (value instanceof FluxArray) return new FluxString(value.toString());
-            if (value instanceof Boolean) return new FluxString(value.toString());
-            if (value instanceof Double) return new FluxString(String.format("%g", value));
-            return new FluxString(value.toString());
-        }
+    private boolean isTruthy(Object value) {
+        if (value == null) return false;
+        if (value instanceof Boolean) return (boolean) value;
+        if (value instanceof Double) return (double) value != 0;
+        return true;
+    }
+
+    String stringify(Object value) {
+        if (value == null) return "null";
+        if (value instanceof FluxFunction) return "<function>";
+        return value.toString();
+    }
+
+    // `left + right` when it is not a number addition
+    FluxString concat(Object left, Object right) {
+        FluxString prefix = left instanceof FluxString ? (FluxString) left : new FluxString(stringify(left));
+        return prefix.concat(stringify(right));
+    }
+
+    private void checkNumberOperands(Object left, Object right) {
+        if ((left instanceof Double || left == null) && (right instanceof Double || right == null)) return;
+        throw new RuntimeException("Runtime Error: Operands must be numbers.");
+    }
 
-        @Override
-        public int arity() {
-            return 1;
+    private void trace(String message) {
+        if (trace) {
+            System.out.println("[TRACE] " + message);
         }
-    }));
-}
+    }
 
-    public void dumpEnvironment() {
-    System.out.println("Environment:");
-    for (var entry : environment.dump().entrySet()) {
-        System.out.println(entry.getKey() + " = " + entry.getValue());
+    private void defineBuiltins() {
+        Builtins.define(globals);
     }
-}
 
-    private RuntimeException runtimeError(String message) {
-    return new RuntimeException("[Flux Runtime Error]\n" + message);
-}
+    public void dumpEnvironment() {
+        System.out.println("Environment:");
+        for (var entry : environment.dump().entrySet()) {
+            System.out.println(entry.getKey() + " = " + entry.getValue());
+        }
+    }
 
+    private RuntimeException strayJump(Completion completion) {
+        String keyword = completion == Completion.BREAK ? "break" : "continue";
+        return runtimeError("'" + keyword + "' outside of a loop.");
+    }
 
+    private RuntimeException runtimeError(String message) {
+        return new RuntimeException("[Flux Runtime Error]\n" + message);
+    }
 }
@@ -7,8 +7,9 @@ import java.util.Map;
 
 public class Lexer {
 
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+    private final CharSequence source;
+    private final int length;
+    private Token next; // token produced by the last scanToken(), if any
 
     private int start = 0;
     private int current = 0;
@@ -27,6 +28,7 @@ public class Lexer {
         keywords.put("exit", TokenType.EXIT);
         keywords.put("for", TokenType.FOR);
         keywords.put("to", TokenType.TO);
+        keywords.put("in", TokenType.IN);
         keywords.put("fun", TokenType.FUN);
         keywords.put("return", TokenType.RETURN);
         keywords.put("and", TokenType.AND);
@@ -37,21 +39,46 @@ public class Lexer {
         keywords.put("class", TokenType.CLASS);
         keywords.put("this", TokenType.THIS);
         keywords.put("null", TokenType.NULL);
+        keywords.put("spawn", TokenType.SPAWN);
+        keywords.put("await", TokenType.AWAIT);
 
     }
 
-    public Lexer(String source) {
+    // Exact powers of ten, for numbers whose digits fit in a double exactly
+    static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // Any CharSequence works, e.g. a String or a MappedSource over a file
+    public Lexer(CharSequence source) {
         this.source = source;
+        this.length = source.length();
     }
 
     public List<Token> scanTokens() {
+        List<Token> tokens = new ArrayList<>();
+        Token token;
+        do {
+            token = nextToken();
+            tokens.add(token);
+        } while (token.type != TokenType.EOF);
+        return tokens;
+    }
+
+    // Pull mode: scans just far enough for one token. Once the source is
+    // used up every call returns EOF.
+    public Token nextToken() {
         while (!isAtEnd()) {
             start = current;
             scanToken();
+            if (next != null) {
+                Token token = next;
+                next = null;
+                return token;
+            }
         }
-
-        tokens.add(new Token(TokenType.EOF, "", null, line));
-        return tokens;
+        return new Token(TokenType.EOF, "", length, 0, null, line);
     }
 
     private void scanToken() {
@@ -153,21 +180,41 @@ case '!':
     private void identifier() {
         while (isAlphaNumeric(peek())) advance();
 
-        String text = source.substring(start, current);
-        TokenType type = keywords.getOrDefault(text, TokenType.IDENTIFIER);
-        addToken(type);
+        // Interned straight from the source: repeated names allocate nothing
+        Symbol symbol = Symbol.intern(source, start, current);
+        TokenType type = keywords.getOrDefault(symbol.name, TokenType.IDENTIFIER);
+        next = new Token(type, symbol, start, line);
     }
 
     private void number() {
-        while (isDigit(peek())) advance();
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+
+        current = start; // re-read the first digit
+        while (isDigit(peek())) {
+            mantissa = mantissa * 10 + (advance() - '0');
+            digits++;
+        }
 
         if (peek() == '.' && isDigit(peekNext())) {
             advance();
-            while (isDigit(peek())) advance();
+            while (isDigit(peek())) {
+                mantissa = mantissa * 10 + (advance() - '0');
+                digits++;
+                scale++;
+            }
         }
 
-        double value = Double.parseDouble(source.substring(start, current));
-        addToken(TokenType.NUMBER, value);
+        // Up to 15 digits the mantissa and the power of ten are both exact,
+        // so one division gives the correctly rounded double, and the token
+        // can rebuild its text from it. Longer numbers keep their text.
+        if (digits <= 15) {
+            next = new Token(mantissa / POWERS_OF_TEN[scale], scale, start, current - start, line);
+        } else {
+            String text = source.subSequence(start, current).toString();
+            next = new Token(TokenType.NUMBER, text, start, current - start, Double.parseDouble(text), line);
+        }
     }
 
     private void string() {
@@ -182,8 +229,9 @@ case '!':
         }
 
         advance(); // closing quote
-        String value = source.substring(start + 1, current - 1);
-        addToken(TokenType.STRING, value);
+        String value = source.subSequence(start + 1, current - 1).toString();
+        // Its text is rebuilt from the literal, so the token keeps no source
+        next = new Token(TokenType.STRING, null, start, current - start, value, line);
     }
 
     private boolean match(char expected) {
@@ -199,7 +247,7 @@ case '!':
     }
 
     private char peekNext() {
-        if (current + 1 >= source.length()) return '\0';
+        if (current + 1 >= length) return '\0';
         return source.charAt(current + 1);
     }
 
@@ -218,7 +266,7 @@ case '!':
     }
 
     private boolean isAtEnd() {
-        return current >= source.length();
+        return current >= length;
     }
 
     private char advance() {
@@ -226,11 +274,6 @@ case '!':
     }
 
     private void addToken(TokenType type) {
-        addToken(type, null);
-    }
-
-    private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+        next = new Token(type, Token.spelling(type), start, current - start, null, line);
     }
 }
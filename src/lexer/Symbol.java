@@ -0,0 +1,125 @@
+package lexer;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// Interned identifier. Every occurrence of a name in any script maps to the
+// same Symbol, so runtime tables can be keyed by its small dense id instead
+// of hashing and comparing strings. The lexer interns straight from the
+// source characters, so repeated identifiers allocate nothing.
+// Symbols are never removed; the table is shared by every script and
+// thread, so adding one is synchronized. Finding an existing one, by name
+// or from source characters, takes no lock.
+public final class Symbol {
+
+    public final String name;
+    public final int id;
+    private final int hash;
+
+    // Open-addressed by hash. A slot is only ever filled, and a new table
+    // is filled before it is published, so readers can probe it unlocked.
+    private static volatile Symbol[] table = new Symbol[1024];
+    private static int count; // guarded by the class lock
+
+    // Every symbol in `table`, for lookups by String from any thread
+    private static final ConcurrentHashMap<String, Symbol> BY_NAME = new ConcurrentHashMap<>(1024);
+
+    private Symbol(String name, int id, int hash) {
+        this.name = name;
+        this.id = id;
+        this.hash = hash;
+    }
+
+    public static Symbol intern(String name) {
+        Symbol symbol = BY_NAME.get(name);
+        return symbol != null ? symbol : intern(name, 0, name.length());
+    }
+
+    // Existing symbol for `name`, or null; never adds one
+    public static Symbol lookup(String name) {
+        return BY_NAME.get(name);
+    }
+
+    // Symbol for text[start, end)
+    public static Symbol intern(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+
+        // A symbol is immutable, so an unlocked read sees a slot either empty
+        // or holding a complete one; a miss is settled under the lock
+        Symbol symbol = find(table, hash, text, start, end);
+        return symbol != null ? symbol : add(hash, text, start, end);
+    }
+
+    private static synchronized Symbol add(int hash, CharSequence text, int start, int end) {
+        Symbol[] symbols = table;
+        int mask = symbols.length - 1;
+        for (int i = mix(hash) & mask; ; i = (i + 1) & mask) {
+            Symbol symbol = symbols[i];
+            if (symbol == null) {
+                symbol = new Symbol(text.subSequence(start, end).toString(), count++, hash);
+                symbols[i] = symbol;
+                BY_NAME.put(symbol.name, symbol);
+                if (count * 2 > symbols.length) grow();
+                return symbol;
+            }
+            if (symbol.hash == hash && matches(symbol.name, text, start, end)) {
+                return symbol;
+            }
+        }
+    }
+
+    // Symbol for text[start, end) in `symbols`, or null when it has none
+    private static Symbol find(Symbol[] symbols, int hash, CharSequence text, int start, int end) {
+        int mask = symbols.length - 1;
+        for (int i = mix(hash) & mask; ; i = (i + 1) & mask) {
+            Symbol symbol = symbols[i];
+            if (symbol == null) return null;
+            if (symbol.hash == hash && matches(symbol.name, text, start, end)) {
+                return symbol;
+            }
+        }
+    }
+
+    // Number of symbols interned so far; ids are 0 .. count() - 1
+    public static synchronized int count() {
+        return count;
+    }
+
+    private static boolean matches(String name, CharSequence text, int start, int end) {
+        if (name.length() != end - start) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != text.charAt(start + i)) return false;
+        }
+        return true;
+    }
+
+    private static void grow() {
+        Symbol[] old = table;
+        Symbol[] symbols = new Symbol[old.length * 2];
+        int mask = symbols.length - 1;
+        for (Symbol symbol : old) {
+            if (symbol == null) continue;
+            int i = mix(symbol.hash) & mask;
+            while (symbols[i] != null) i = (i + 1) & mask;
+            symbols[i] = symbol;
+        }
+        table = symbols;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    // Identity is equality: ids are unique, so they make a perfect hash
+    @Override
+    public int hashCode() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -1,20 +1,104 @@
 package lexer;
 
+// A token is a span [offset, offset + length) of the source. Tokens never
+// hold the source itself, so a mapped file is released once lexing is done.
+// Punctuation and operators share their fixed spelling, string literals
+// and numbers rebuild theirs from the literal when asked, and identifiers
+// carry their interned Symbol, whose name is the text. Only numbers too
+// long to rebuild keep a copy.
 public class Token {
     public final TokenType type;
-    public final String lexeme;
     public final Object literal;
     public final int line;
+    public final int offset;
+    public final int length;
+    public final Symbol symbol; // interned name of identifiers and `this`, else null
+
+    private final String text; // known text, or null to rebuild it from the literal
+    private final int scale; // digits after the point of a number to rebuild
 
     public Token(TokenType type, String lexeme, Object literal, int line) {
+        this(type, names(type) ? Symbol.intern(lexeme) : null, lexeme, 0, 0, lexeme.length(), literal, line);
+    }
+
+    // Identifier or keyword already interned by the lexer; its text is the symbol's name
+    public Token(TokenType type, Symbol symbol, int offset, int line) {
+        this(type, names(type) ? symbol : null, symbol.name, 0, offset, symbol.name.length(), null, line);
+    }
+
+    // Any other token; `text` is null for a string literal
+    public Token(TokenType type, String text, int offset, int length, Object literal, int line) {
+        this(type, null, text, 0, offset, length, literal, line);
+    }
+
+    // Number of up to 15 digits, `scale` of them after the point
+    public Token(double value, int scale, int offset, int length, int line) {
+        this(TokenType.NUMBER, null, null, scale, offset, length, value, line);
+    }
+
+    private Token(TokenType type, Symbol symbol, String text, int scale,
+                  int offset, int length, Object literal, int line) {
         this.type = type;
-        this.lexeme = lexeme;
+        this.symbol = symbol;
+        this.text = text;
+        this.scale = scale;
+        this.offset = offset;
+        this.length = length;
         this.literal = literal;
         this.line = line;
     }
 
+    private static boolean names(TokenType type) {
+        return type == TokenType.IDENTIFIER || type == TokenType.THIS;
+    }
+
+    // Fixed spelling of punctuation and operators, else null
+    public static String spelling(TokenType type) {
+        return switch (type) {
+            case LEFT_PAREN -> "(";
+            case RIGHT_PAREN -> ")";
+            case LEFT_BRACE -> "{";
+            case RIGHT_BRACE -> "}";
+            case LEFT_BRACKET -> "[";
+            case RIGHT_BRACKET -> "]";
+            case PLUS -> "+";
+            case MINUS -> "-";
+            case STAR -> "*";
+            case SLASH -> "/";
+            case PERCENT -> "%";
+            case EQUAL -> "=";
+            case EQUAL_EQUAL -> "==";
+            case GREATER -> ">";
+            case GREATER_EQUAL -> ">=";
+            case LESS -> "<";
+            case LESS_EQUAL -> "<=";
+            case BANG_EQUAL -> "!=";
+            case DOT -> ".";
+            case COMMA -> ",";
+            case COLON -> ":";
+            case EOF -> "";
+            default -> null;
+        };
+    }
+
+    public String lexeme() {
+        if (text != null) return text;
+        if (type == TokenType.STRING) return "\"" + literal + "\"";
+
+        // The digits times 10^scale give back the exact integer the lexer
+        // read; the span's length says how many leading zeros it had
+        long mantissa = Math.round((double) literal * Lexer.POWERS_OF_TEN[scale]);
+        String digits = Long.toString(mantissa);
+        int width = scale > 0 ? length - 1 : length;
+        StringBuilder number = new StringBuilder(length);
+        for (int i = digits.length(); i < width; i++) number.append('0');
+        number.append(digits);
+        if (scale > 0) number.insert(width - scale, '.');
+        return number.toString();
+    }
+
     @Override
     public String toString() {
-        return type + " " + lexeme + " " + (literal != null ? literal : "");
+        return type + " " + lexeme() + " " + (literal != null ? literal : "");
     }
 }
@@ -22,9 +22,10 @@ public enum TokenType {
 
     // Keywords
     IF, PRINT, ELSE, WHILE,
-    FOR, TO,AND,OR,NOT,
+    FOR, TO, IN,AND,OR,NOT,
     BREAK,CONTINUE,
     CLASS,THIS,DOT,
+    SPAWN, AWAIT,
 
 
 
@@ -0,0 +1,293 @@
+package optimizer;
+
+import ast.Expr;
+import ast.Stmt;
+import java.util.ArrayList;
+import java.util.List;
+import lexer.TokenType;
+import runtime.Numbers;
+
+/**
+ * AST-to-AST pass that runs between the parser and the resolver.
+ *
+ * It folds operators whose operands are literals, replaces an if with the
+ * branch its literal condition selects, drops while loops that can never
+ * run, and drops statements that follow a return, break, continue or exit
+ * in the same list. Because blocks do not open scopes, splicing a branch's
+ * statements into the enclosing list does not change what they mean.
+ *
+ * Folding only happens where the result is exactly what the engines would
+ * compute: numbers and booleans. Strings are left alone because '+' on
+ * strings builds a different runtime type than a string literal.
+ */
+public class Optimizer {
+
+    public static List<Stmt> optimize(List<Stmt> statements) {
+        return new Optimizer().statements(statements);
+    }
+
+    // ===================== STATEMENTS =====================
+
+    private List<Stmt> statements(List<Stmt> statements) {
+        List<Stmt> result = new ArrayList<>();
+        for (Stmt stmt : statements) {
+            statement(stmt, result);
+
+            // Nothing after these in the same list can run
+            Stmt last = result.isEmpty() ? null : result.get(result.size() - 1);
+            if (last instanceof Stmt.Return || last instanceof Stmt.Break
+                    || last instanceof Stmt.Continue || last instanceof Stmt.Exit) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    // Appends the optimized form of `stmt`, which may be several statements or none
+    private void statement(Stmt stmt, List<Stmt> out) {
+
+        if (stmt instanceof Stmt.Print) {
+            List<Expr> expressions = new ArrayList<>();
+            for (Expr expr : ((Stmt.Print) stmt).expressions) {
+                expressions.add(expression(expr));
+            }
+            out.add(new Stmt.Print(expressions));
+        }
+
+        else if (stmt instanceof Stmt.Expression) {
+            out.add(new Stmt.Expression(expression(((Stmt.Expression) stmt).expression)));
+        }
+
+        else if (stmt instanceof Stmt.Assignment) {
+            Stmt.Assignment assign = (Stmt.Assignment) stmt;
+            out.add(new Stmt.Assignment(assign.name, expression(assign.value)));
+        }
+
+        else if (stmt instanceof Stmt.Return) {
+            Stmt.Return r = (Stmt.Return) stmt;
+            out.add(new Stmt.Return(r.value == null ? null : expression(r.value)));
+        }
+
+        else if (stmt instanceof Stmt.Block) {
+            List<Stmt> body = statements(((Stmt.Block) stmt).statements);
+            if (!body.isEmpty()) {
+                out.add(new Stmt.Block(body));
+            }
+        }
+
+        else if (stmt instanceof Stmt.If) {
+            Stmt.If ifStmt = (Stmt.If) stmt;
+            Expr condition = expression(ifStmt.condition);
+
+            if (condition instanceof Expr.Literal) {
+                List<Stmt> taken = isTruthy(((Expr.Literal) condition).value)
+                    ? ifStmt.thenBody
+                    : ifStmt.elseBody;
+                if (taken != null) {
+                    out.addAll(statements(taken));
+                }
+                return;
+            }
+
+            List<Stmt> elseBody = ifStmt.elseBody == null ? null : statements(ifStmt.elseBody);
+            out.add(new Stmt.If(condition, statements(ifStmt.thenBody), elseBody));
+        }
+
+        else if (stmt instanceof Stmt.While) {
+            Stmt.While whileStmt = (Stmt.While) stmt;
+            Expr condition = expression(whileStmt.condition);
+            if (condition instanceof Expr.Literal && !isTruthy(((Expr.Literal) condition).value)) {
+                return; // never runs
+            }
+            out.add(new Stmt.While(condition, statements(whileStmt.body)));
+        }
+
+        else if (stmt instanceof Stmt.For) {
+            Stmt.For forStmt = (Stmt.For) stmt;
+            out.add(new Stmt.For(
+                forStmt.name,
+                expression(forStmt.start),
+                expression(forStmt.end),
+                statements(forStmt.body)
+            ));
+        }
+
+        else if (stmt instanceof Stmt.ForIn) {
+            Stmt.ForIn forIn = (Stmt.ForIn) stmt;
+            out.add(new Stmt.ForIn(forIn.name, expression(forIn.iterable), statements(forIn.body)));
+        }
+
+        else if (stmt instanceof Stmt.Function) {
+            out.add(function((Stmt.Function) stmt));
+        }
+
+        else if (stmt instanceof Stmt.Class) {
+            Stmt.Class cls = (Stmt.Class) stmt;
+            List<Stmt.Function> methods = new ArrayList<>();
+            for (Stmt.Function method : cls.methods) {
+                methods.add(function(method));
+            }
+            out.add(new Stmt.Class(cls.name, cls.fields, methods));
+        }
+
+        else {
+            // Break, Continue and Exit have nothing to optimize
+            out.add(stmt);
+        }
+    }
+
+    private Stmt.Function function(Stmt.Function fn) {
+        return new Stmt.Function(fn.name, fn.params, statements(fn.body));
+    }
+
+    // ===================== EXPRESSIONS =====================
+
+    private Expr expression(Expr expr) {
+
+        if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            Expr left = expression(binary.left);
+            Expr right = expression(binary.right);
+            Expr folded = fold(left, binary, right);
+            return folded != null ? folded : new Expr.Binary(left, binary.operator, right);
+        }
+
+        else if (expr instanceof Expr.Logical) {
+            return logical((Expr.Logical) expr);
+        }
+
+        else if (expr instanceof Expr.Call) {
+            Expr.Call call = (Expr.Call) expr;
+            return new Expr.Call(expression(call.callee), expressions(call.arguments));
+        }
+
+        else if (expr instanceof Expr.Spawn) {
+            return new Expr.Spawn((Expr.Call) expression(((Expr.Spawn) expr).call));
+        }
+
+        else if (expr instanceof Expr.Await) {
+            return new Expr.Await(expression(((Expr.Await) expr).task));
+        }
+
+        else if (expr instanceof Expr.Get) {
+            Expr.Get get = (Expr.Get) expr;
+            return new Expr.Get(expression(get.object), get.name);
+        }
+
+        else if (expr instanceof Expr.Set) {
+            Expr.Set set = (Expr.Set) expr;
+            return new Expr.Set(expression(set.object), set.name, expression(set.value));
+        }
+
+        else if (expr instanceof Expr.Index) {
+            Expr.Index index = (Expr.Index) expr;
+            return new Expr.Index(expression(index.array), expression(index.index));
+        }
+
+        else if (expr instanceof Expr.Array) {
+            return new Expr.Array(expressions(((Expr.Array) expr).elements));
+        }
+
+        else if (expr instanceof Expr.Map) {
+            Expr.Map map = (Expr.Map) expr;
+            return new Expr.Map(expressions(map.keys), expressions(map.values));
+        }
+
+        else if (expr instanceof Expr.Lambda) {
+            Expr.Lambda lambda = (Expr.Lambda) expr;
+            return new Expr.Lambda(lambda.params, statements(lambda.body));
+        }
+
+        // Literals, variables and `this` stay as they are
+        return expr;
+    }
+
+    private List<Expr> expressions(List<Expr> exprs) {
+        List<Expr> result = new ArrayList<>();
+        for (Expr expr : exprs) {
+            result.add(expression(expr));
+        }
+        return result;
+    }
+
+    // Number arithmetic and comparison, and boolean equality; null when not foldable
+    private Expr fold(Expr left, Expr.Binary binary, Expr right) {
+        if (!(left instanceof Expr.Literal) || !(right instanceof Expr.Literal)) {
+            return null;
+        }
+        Object l = ((Expr.Literal) left).value;
+        Object r = ((Expr.Literal) right).value;
+
+        if (l instanceof Boolean && r instanceof Boolean) {
+            switch (binary.operator.type) {
+                case EQUAL_EQUAL: return new Expr.Literal(l.equals(r));
+                case BANG_EQUAL:  return new Expr.Literal(!l.equals(r));
+                default:          return null;
+            }
+        }
+
+        if (!(l instanceof Double) || !(r instanceof Double)) {
+            return null;
+        }
+        double a = (double) l;
+        double b = (double) r;
+
+        switch (binary.operator.type) {
+            case PLUS:          return new Expr.Literal(a + b);
+            case MINUS:         return new Expr.Literal(a - b);
+            case STAR:          return new Expr.Literal(a * b);
+            case SLASH:         return new Expr.Literal(a / b);
+            case PERCENT:       return new Expr.Literal(Numbers.modulo(a, b));
+            case GREATER:       return new Expr.Literal(a > b);
+            case GREATER_EQUAL: return new Expr.Literal(a >= b);
+            case LESS:          return new Expr.Literal(a < b);
+            case LESS_EQUAL:    return new Expr.Literal(a <= b);
+            // Same as Double.equals(): NaN equals itself, 0.0 differs from -0.0
+            case EQUAL_EQUAL:   return new Expr.Literal(l.equals(r));
+            case BANG_EQUAL:    return new Expr.Literal(!l.equals(r));
+            default:            return null;
+        }
+    }
+
+    private Expr logical(Expr.Logical logical) {
+        Expr right = expression(logical.right);
+
+        switch (logical.operator.type) {
+            case NOT:
+                if (right instanceof Expr.Literal) {
+                    return new Expr.Literal(!isTruthy(((Expr.Literal) right).value));
+                }
+                return new Expr.Logical(null, logical.operator, right);
+
+            case OR:
+            case AND: {
+                Expr left = expression(logical.left);
+                if (left instanceof Expr.Literal) {
+                    boolean truthy = isTruthy(((Expr.Literal) left).value);
+                    boolean or = logical.operator.type == TokenType.OR;
+                    // The left side alone decides: the right side is never evaluated
+                    if (truthy == or) {
+                        return new Expr.Literal(or);
+                    }
+                    if (right instanceof Expr.Literal) {
+                        return new Expr.Literal(isTruthy(((Expr.Literal) right).value));
+                    }
+                }
+                return new Expr.Logical(left, logical.operator, right);
+            }
+
+            default:
+                return new Expr.Logical(expression(logical.left), logical.operator, right);
+        }
+    }
+
+    // ===================== HELPERS =====================
+
+    // Same truthiness as the engines: null and false are falsy, and so is 0
+    private static boolean isTruthy(Object value) {
+        if (value == null) return false;
+        if (value instanceof Boolean) return (boolean) value;
+        if (value instanceof Double) return (double) value != 0;
+        return true;
+    }
+}
@@ -3,27 +3,49 @@ package parser;
 import ast.Expr;
 import ast.Stmt;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Supplier;
+import lexer.Lexer;
 import lexer.Token;
 import lexer.TokenType;
 
 public class Parser {
 
-    private final List<Token> tokens;
-    private int current = 0;
+    // Tokens are pulled one at a time; the parser never looks more than
+    // one token past the current one, so only three are held at once
+    private final Supplier<Token> tokens;
+    private Token previous;
+    private Token current;
+    private Token next; // second token of lookahead, pulled by checkNext()
 
     public Parser(List<Token> tokens) {
-        this.tokens = tokens;
+        Iterator<Token> iterator = tokens.iterator();
+        this.tokens = iterator::next;
+        this.current = iterator.next();
+    }
+
+    // Parses straight off the lexer, without a token list
+    public Parser(Lexer lexer) {
+        this.tokens = lexer::nextToken;
+        this.current = lexer.nextToken();
     }
 
     public List<Stmt> parse() {
     List<Stmt> statements = new ArrayList<>();
-    while (!isAtEnd()) {
-        statements.add(declaration());
+    Stmt stmt;
+    while ((stmt = parseNext()) != null) {
+        statements.add(stmt);
     }
     return statements;
 }
 
+    // Next top-level declaration, or null at the end of the source
+    public Stmt parseNext() {
+        if (isAtEnd()) return null;
+        return declaration();
+    }
+
     private Stmt declaration() {
 
     // ✅ 1️⃣ CLASS FIRST (highest priority)
@@ -212,14 +234,23 @@ private Expr finishCall(Expr callee) {
 
     private Stmt forStatement() {
     // for i = start to end { body }
+    // for x in iterable { body }
 
     Token varName = consume(TokenType.IDENTIFIER, "Expected loop variable name.");
+    if (match(TokenType.IN)) {
+        Expr iterable = expression();
+        return new Stmt.ForIn(varName, iterable, forBody());
+    }
     consume(TokenType.EQUAL, "Expected '=' after loop variable.");
     Expr start = expression();
 
     consume(TokenType.TO, "Expected 'to' in for loop.");
     Expr end = expression();
 
+    return new Stmt.For(varName, start, end, forBody());
+}
+
+    private List<Stmt> forBody() {
     consume(TokenType.LEFT_BRACE, "Expected '{' after for header.");
 
     List<Stmt> body = new ArrayList<>();
@@ -227,49 +258,7 @@ private Expr finishCall(Expr callee) {
         body.add(statement());
     }
     consume(TokenType.RIGHT_BRACE, "Expected '}' after for body.");
-
-    // i = start
-    Stmt init = new Stmt.Assignment(varName, start);
-
-    // condition: i <= end
-    Token lessEqual = new Token(
-        TokenType.LESS_EQUAL,
-        "<=",
-        null,
-        varName.line
-    );
-
-    Expr condition = new Expr.Binary(
-        new Expr.Variable(varName),
-        lessEqual,
-        end
-    );
-
-    // i = i + 1
-    Token plus = new Token(
-        TokenType.PLUS,
-        "+",
-        null,
-        varName.line
-    );
-
-    Expr incrementExpr = new Expr.Binary(
-        new Expr.Variable(varName),
-        plus,
-        new Expr.Literal(1.0)
-    );
-
-    Stmt increment = new Stmt.Assignment(varName, incrementExpr);
-
-    body.add(increment);
-
-    Stmt whileLoop = new Stmt.While(condition, body);
-
-    List<Stmt> block = new ArrayList<>();
-    block.add(init);
-    block.add(whileLoop);
-
-    return new Stmt.Block(block);
+    return body;
 }
 
     private Expr arrayLiteral() {
@@ -437,6 +426,19 @@ private Expr and() {
         return new Expr.Binary(new Expr.Literal(0.0), operator, right);
     }
 
+    // Tasks: spawn takes a call, await any expression that yields a task
+    if (match(TokenType.SPAWN)) {
+        Expr call = call();
+        if (!(call instanceof Expr.Call)) {
+            throw error(previous(), "Expected a call after 'spawn'.");
+        }
+        return new Expr.Spawn((Expr.Call) call);
+    }
+
+    if (match(TokenType.AWAIT)) {
+        return new Expr.Await(call());
+    }
+
     // 3️⃣ Literals
     if (match(TokenType.NUMBER)) {
         return new Expr.Literal(previous().literal);
@@ -508,7 +510,11 @@ private Expr and() {
     }
 
     private Token advance() {
-        if (!isAtEnd()) current++;
+        if (!isAtEnd()) {
+            previous = current;
+            current = next != null ? next : tokens.get();
+            next = null;
+        }
         return previous();
     }
 
@@ -517,16 +523,17 @@ private Expr and() {
     }
 
     private Token peek() {
-        return tokens.get(current);
+        return current;
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return previous;
     }
 
     private boolean checkNext(TokenType type) {
-    if (current + 1 >= tokens.size()) return false;
-    return tokens.get(current + 1).type == type;
+    if (isAtEnd()) return false;
+    if (next == null) next = tokens.get();
+    return next.type == type;
 }
 
     private Token consume(TokenType type, String message) {
@@ -537,7 +544,7 @@ private Expr and() {
     private RuntimeException error(Token token, String message) {
     return new RuntimeException(
         "[line " + token.line + "] Syntax Error: " + message +
-        (token.type == lexer.TokenType.EOF ? " at end of file." : " at '" + token.lexeme + "'.")
+        (token.type == lexer.TokenType.EOF ? " at end of file." : " at '" + token.lexeme() + "'.")
     );
 }
 
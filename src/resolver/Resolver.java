@@ -0,0 +1,269 @@
+package resolver;
+
+import ast.Expr;
+import ast.Stmt;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lexer.Token;
+import runtime.Environment;
+
+/**
+ * Static pass that runs between the parser and the interpreter.
+ *
+ * Flux has no declarations: assigning to a name inside a function makes it
+ * local to that function, and blocks do not open new scopes. The resolver
+ * collects those names per function, gives each one a slot in the function's
+ * frame, and records on every variable node how many frames to hop (depth)
+ * and which slot to read. Names that are not local to any enclosing function
+ * become slots in the global environment.
+ */
+public class Resolver {
+
+    private final Environment globals;
+    private final List<Map<String, Integer>> scopes = new ArrayList<>();
+
+    public Resolver(Environment globals) {
+        this.globals = globals;
+    }
+
+    public void resolve(List<Stmt> statements) {
+        for (Stmt stmt : statements) {
+            resolve(stmt);
+        }
+    }
+
+    // ===================== STATEMENTS =====================
+
+    private void resolve(Stmt stmt) {
+
+        if (stmt instanceof Stmt.Print) {
+            for (Expr expr : ((Stmt.Print) stmt).expressions) {
+                resolve(expr);
+            }
+        }
+
+        else if (stmt instanceof Stmt.Expression) {
+            resolve(((Stmt.Expression) stmt).expression);
+        }
+
+        else if (stmt instanceof Stmt.Return) {
+            Stmt.Return r = (Stmt.Return) stmt;
+            if (r.value != null) resolve(r.value);
+            // A top-level return ends the script, so only returns inside functions are tail calls
+            r.tail = r.value instanceof Expr.Call && !scopes.isEmpty();
+        }
+
+        else if (stmt instanceof Stmt.Assignment) {
+            Stmt.Assignment assign = (Stmt.Assignment) stmt;
+            resolve(assign.value);
+            int[] target = resolveName(assign.name);
+            assign.depth = target[0];
+            assign.slot = target[1];
+        }
+
+        else if (stmt instanceof Stmt.Block) {
+            resolve(((Stmt.Block) stmt).statements);
+        }
+
+        else if (stmt instanceof Stmt.If) {
+            Stmt.If ifStmt = (Stmt.If) stmt;
+            resolve(ifStmt.condition);
+            resolve(ifStmt.thenBody);
+            if (ifStmt.elseBody != null) resolve(ifStmt.elseBody);
+        }
+
+        else if (stmt instanceof Stmt.While) {
+            Stmt.While whileStmt = (Stmt.While) stmt;
+            resolve(whileStmt.condition);
+            resolve(whileStmt.body);
+        }
+
+        else if (stmt instanceof Stmt.For) {
+            Stmt.For forStmt = (Stmt.For) stmt;
+            resolve(forStmt.start);
+            resolve(forStmt.end);
+            int[] target = resolveName(forStmt.name);
+            forStmt.depth = target[0];
+            forStmt.slot = target[1];
+            resolve(forStmt.body);
+
+            // The engines may keep the counter to themselves unless the body rebinds it
+            Map<String, Integer> assigned = new LinkedHashMap<>();
+            collectLocals(forStmt.body, assigned);
+            forStmt.counted = !assigned.containsKey(forStmt.name.lexeme());
+        }
+
+        else if (stmt instanceof Stmt.ForIn) {
+            Stmt.ForIn forIn = (Stmt.ForIn) stmt;
+            resolve(forIn.iterable);
+            int[] target = resolveName(forIn.name);
+            forIn.depth = target[0];
+            forIn.slot = target[1];
+            resolve(forIn.body);
+        }
+
+        else if (stmt instanceof Stmt.Function) {
+            Stmt.Function fn = (Stmt.Function) stmt;
+            int[] target = resolveName(fn.name);
+            fn.depth = target[0];
+            fn.slot = target[1];
+            fn.layout = resolveFunction(fn.params, fn.body, false);
+        }
+
+        else if (stmt instanceof Stmt.Class) {
+            Stmt.Class cls = (Stmt.Class) stmt;
+            int[] target = resolveName(cls.name);
+            cls.depth = target[0];
+            cls.slot = target[1];
+            for (Stmt.Function method : cls.methods) {
+                method.layout = resolveFunction(method.params, method.body, true);
+            }
+        }
+
+        // Break, Continue and Exit reference no names
+    }
+
+    // ===================== EXPRESSIONS =====================
+
+    private void resolve(Expr expr) {
+        if (expr == null) return;
+
+        if (expr instanceof Expr.Variable) {
+            Expr.Variable variable = (Expr.Variable) expr;
+            int[] target = resolveName(variable.name);
+            variable.depth = target[0];
+            variable.slot = target[1];
+        }
+
+        else if (expr instanceof Expr.This) {
+            Expr.This self = (Expr.This) expr;
+            int[] target = resolveName(self.keyword);
+            self.depth = target[0];
+            self.slot = target[1];
+        }
+
+        else if (expr instanceof Expr.Binary) {
+            resolve(((Expr.Binary) expr).left);
+            resolve(((Expr.Binary) expr).right);
+        }
+
+        else if (expr instanceof Expr.Logical) {
+            resolve(((Expr.Logical) expr).left);
+            resolve(((Expr.Logical) expr).right);
+        }
+
+        else if (expr instanceof Expr.Call) {
+            Expr.Call call = (Expr.Call) expr;
+            resolve(call.callee);
+            for (Expr arg : call.arguments) {
+                resolve(arg);
+            }
+        }
+
+        else if (expr instanceof Expr.Spawn) {
+            resolve(((Expr.Spawn) expr).call);
+        }
+
+        else if (expr instanceof Expr.Await) {
+            resolve(((Expr.Await) expr).task);
+        }
+
+        else if (expr instanceof Expr.Get) {
+            resolve(((Expr.Get) expr).object);
+        }
+
+        else if (expr instanceof Expr.Set) {
+            resolve(((Expr.Set) expr).object);
+            resolve(((Expr.Set) expr).value);
+        }
+
+        else if (expr instanceof Expr.Index) {
+            resolve(((Expr.Index) expr).array);
+            resolve(((Expr.Index) expr).index);
+        }
+
+        else if (expr instanceof Expr.Array) {
+            for (Expr e : ((Expr.Array) expr).elements) {
+                resolve(e);
+            }
+        }
+
+        else if (expr instanceof Expr.Map) {
+            for (Expr e : ((Expr.Map) expr).keys) {
+                resolve(e);
+            }
+            for (Expr e : ((Expr.Map) expr).values) {
+                resolve(e);
+            }
+        }
+
+        else if (expr instanceof Expr.Lambda) {
+            Expr.Lambda lambda = (Expr.Lambda) expr;
+            lambda.layout = resolveFunction(lambda.params, lambda.body, false);
+        }
+
+        // Literals reference no names
+    }
+
+    // ===================== SCOPES =====================
+
+    private String[] resolveFunction(List<Token> params, List<Stmt> body, boolean method) {
+        Map<String, Integer> scope = new LinkedHashMap<>();
+        if (method) declare(scope, "this");
+        for (Token param : params) {
+            declare(scope, param.lexeme());
+        }
+
+        // Every name assigned anywhere in the body is local to the whole function
+        collectLocals(body, scope);
+
+        scopes.add(scope);
+        resolve(body);
+        scopes.remove(scopes.size() - 1);
+
+        return scope.keySet().toArray(new String[0]);
+    }
+
+    private void collectLocals(List<Stmt> statements, Map<String, Integer> scope) {
+        for (Stmt stmt : statements) {
+            if (stmt instanceof Stmt.Assignment) {
+                declare(scope, ((Stmt.Assignment) stmt).name.lexeme());
+            } else if (stmt instanceof Stmt.Function) {
+                declare(scope, ((Stmt.Function) stmt).name.lexeme());
+            } else if (stmt instanceof Stmt.Class) {
+                declare(scope, ((Stmt.Class) stmt).name.lexeme());
+            } else if (stmt instanceof Stmt.Block) {
+                collectLocals(((Stmt.Block) stmt).statements, scope);
+            } else if (stmt instanceof Stmt.If) {
+                Stmt.If ifStmt = (Stmt.If) stmt;
+                collectLocals(ifStmt.thenBody, scope);
+                if (ifStmt.elseBody != null) collectLocals(ifStmt.elseBody, scope);
+            } else if (stmt instanceof Stmt.While) {
+                collectLocals(((Stmt.While) stmt).body, scope);
+            } else if (stmt instanceof Stmt.For) {
+                declare(scope, ((Stmt.For) stmt).name.lexeme());
+                collectLocals(((Stmt.For) stmt).body, scope);
+            } else if (stmt instanceof Stmt.ForIn) {
+                declare(scope, ((Stmt.ForIn) stmt).name.lexeme());
+                collectLocals(((Stmt.ForIn) stmt).body, scope);
+            }
+        }
+    }
+
+    private void declare(Map<String, Integer> scope, String name) {
+        scope.putIfAbsent(name, scope.size());
+    }
+
+    // Returns {depth, slot}; depth -1 means a slot in the global environment
+    private int[] resolveName(Token name) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Integer slot = scopes.get(i).get(name.lexeme());
+            if (slot != null) {
+                return new int[] { scopes.size() - 1 - i, slot };
+            }
+        }
+        return new int[] { -1, globals.slot(name.lexeme()) };
+    }
+}
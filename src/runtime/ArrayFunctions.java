@@ -0,0 +1,153 @@
+package runtime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * map, filter and reduce for FluxArray, and their fork-join versions.
+ *
+ * Callbacks run through the FunctionCaller of the engine on the current
+ * thread, so they see and may change the script's state like any other
+ * call. The parallel versions split the array into chunks on the common
+ * ForkJoinPool. Each worker runs the chunks it takes in one forked caller,
+ * which shares the globals read-only (see Tasks.snapshot), with its own
+ * copy of the callback; mutable elements are copied as they are handed to
+ * it (see Tasks.isolate). Only results come back.
+ *
+ * All of them work on the elements the array had when they were called.
+ */
+final class ArrayFunctions {
+
+    private static final ForkJoinPool POOL = ForkJoinPool.commonPool();
+
+    // More chunks than workers, so one slow chunk does not hold up the rest
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    static List<Object> map(Object function, Object[] elements) {
+        FunctionCaller caller = Callers.current();
+        List<Object> result = new ArrayList<>(elements.length);
+        for (Object element : elements) {
+            result.add(caller.call(function, Arrays.asList(element)));
+        }
+        return result;
+    }
+
+    static List<Object> filter(Object function, Object[] elements) {
+        FunctionCaller caller = Callers.current();
+        List<Object> result = new ArrayList<>();
+        for (Object element : elements) {
+            if (isTruthy(caller.call(function, Arrays.asList(element)))) {
+                result.add(element);
+            }
+        }
+        return result;
+    }
+
+    static Object reduce(Object function, Object initial, Object[] elements) {
+        FunctionCaller caller = Callers.current();
+        Object accumulator = initial;
+        for (Object element : elements) {
+            accumulator = caller.call(function, Arrays.asList(accumulator, element));
+        }
+        return accumulator;
+    }
+
+    // ===================== PARALLEL =====================
+
+    private interface Chunk {
+        Object run(FunctionCaller caller, Object function, Object[] elements, int from, int to);
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<Object> parMap(Object function, Object[] elements) {
+        List<Object> result = new ArrayList<>(elements.length);
+        for (Object part : runChunks(function, elements, (caller, callback, array, from, to) -> {
+            List<Object> mapped = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                mapped.add(caller.call(callback, Arrays.asList(Tasks.isolate(array[i]))));
+            }
+            return mapped;
+        })) {
+            result.addAll((List<Object>) part);
+        }
+        return result;
+    }
+
+    // Each chunk is folded from its first element, then the partial results
+    // are folded into `initial` in order. Equal to reduce() when `function`
+    // is associative, which is what the split requires.
+    static Object parReduce(Object function, Object initial, Object[] elements) {
+        List<Object> parts = runChunks(function, elements, (caller, callback, array, from, to) -> {
+            Object accumulator = Tasks.isolate(array[from]);
+            for (int i = from + 1; i < to; i++) {
+                accumulator = caller.call(callback, Arrays.asList(accumulator, Tasks.isolate(array[i])));
+            }
+            return accumulator;
+        });
+
+        FunctionCaller caller = Callers.current();
+        Object accumulator = initial;
+        for (Object part : parts) {
+            accumulator = caller.call(function, Arrays.asList(accumulator, part));
+        }
+        return accumulator;
+    }
+
+    // Runs `chunk` over consecutive slices of `elements` on the pool and
+    // returns the results in slice order. Each worker takes the next slice
+    // until none is left. A failing chunk keeps its own exception: the pool
+    // would hand back a reflective copy of it instead.
+    private static List<Object> runChunks(Object function, Object[] elements, Chunk chunk) {
+        int count = Math.min(elements.length, POOL.getParallelism() * CHUNKS_PER_WORKER);
+        int workers = Math.min(count, POOL.getParallelism());
+        FunctionCaller parent = Callers.current();
+        Object[] results = new Object[count];
+        Throwable[] failures = new Throwable[count];
+        AtomicInteger next = new AtomicInteger();
+
+        List<Callable<Object>> tasks = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            // Forked and copied here, while the caller's state holds still
+            FunctionCaller caller = parent.fork();
+            Object callback = Tasks.isolate(function);
+            tasks.add(() -> {
+                FunctionCaller previous = Callers.enter(caller);
+                try {
+                    for (int c = next.getAndIncrement(); c < count; c = next.getAndIncrement()) {
+                        int from = (int) ((long) elements.length * c / count);
+                        int to = (int) ((long) elements.length * (c + 1) / count);
+                        try {
+                            results[c] = chunk.run(caller, callback, elements, from, to);
+                        } catch (Throwable e) {
+                            failures[c] = e;
+                        }
+                    }
+                } finally {
+                    Callers.exit(previous);
+                }
+                return null;
+            });
+        }
+        POOL.invokeAll(tasks);
+
+        for (Throwable failure : failures) {
+            if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+            if (failure instanceof Error) throw (Error) failure;
+        }
+        return Arrays.asList(results);
+    }
+
+    // Same rule as the engines' conditions
+    private static boolean isTruthy(Object value) {
+        if (value == null) return false;
+        if (value instanceof Boolean) return (boolean) value;
+        if (value instanceof Double) return (double) value != 0;
+        return true;
+    }
+
+    private ArrayFunctions() {}
+}
@@ -1,3 +0,0 @@
-package runtime;
-
-public class BreakSignal extends RuntimeException {}
@@ -0,0 +1,59 @@
+package runtime;
+
+import java.util.List;
+
+// Native method shared by every value of a builtin type (strings, arrays).
+// The receiver is passed in, so one instance serves all values and nothing
+// is allocated per access. Builtin methods take at most two arguments.
+public final class BuiltinMethod<T> {
+
+    public interface Body<T> {
+        Object call(T self, Object first, Object second);
+    }
+
+    private final String name;
+    private final int arity;
+    private final Body<T> body;
+
+    public BuiltinMethod(String name, int arity, Body<T> body) {
+        this.name = name;
+        this.arity = arity;
+        this.body = body;
+    }
+
+    // Direct call from a `value.name(...)` site; unused arguments are null
+    public Object invoke(T self, int argc, Object first, Object second) {
+        if (argc != arity) {
+            throw new RuntimeException(
+                "[Flux Runtime Error]\nFunction '" + name +
+                "' expected " + arity +
+                " arguments but got " + argc
+            );
+        }
+        return body.call(self, first, second);
+    }
+
+    public Object invoke(T self, List<Object> arguments) {
+        int argc = arguments.size();
+        return invoke(self,
+                      argc,
+                      argc > 0 ? arguments.get(0) : null,
+                      argc > 1 ? arguments.get(1) : null);
+    }
+
+    // First-class method value, e.g. `f = s.upper`
+    public BuiltinFunction bind(T self) {
+        return new BuiltinFunction(name, new NativeFunction() {
+            @Override
+            public Object call(List<Object> arguments) {
+                return body.call(self,
+                                 arguments.size() > 0 ? arguments.get(0) : null,
+                                 arguments.size() > 1 ? arguments.get(1) : null);
+            }
+            @Override
+            public int arity() {
+                return arity;
+            }
+        });
+    }
+}
@@ -0,0 +1,232 @@
+package runtime;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Global functions shared by every execution engine. Builtins hold no
+// state, so each one is created once and the same instances are defined
+// into every global environment.
+public class Builtins {
+
+    private static final Map<String, BuiltinFunction> SHARED = new LinkedHashMap<>();
+
+    public static void define(Environment environment) {
+        for (Map.Entry<String, BuiltinFunction> builtin : SHARED.entrySet()) {
+            environment.define(builtin.getKey(), builtin.getValue());
+        }
+    }
+
+    static {
+        // len(array)
+        SHARED.put("len", new BuiltinFunction("len", new NativeFunction() {
+            @Override
+            public Object call(List<Object> arguments) {
+                Object value = arguments.get(0);
+                if (value instanceof FluxArray) {
+                    return (double) ((FluxArray) value).size();
+                }
+                throw new RuntimeException("[Flux Runtime Error]\nlen() expects an array.");
+            }
+
+            @Override
+            public int arity() {
+                return 1;
+            }
+        }));
+
+
+        // type(value)
+        SHARED.put("type", new BuiltinFunction("type", new NativeFunction() {
+            @Override
+            public Object call(List<Object> arguments) {
+                Object v = arguments.get(0);
+                if (v instanceof Double) return "number";
+                if (v instanceof FluxString) return "string";
+                if (v instanceof Boolean) return "boolean";
+                if (v instanceof FluxArray) return "array";
+                if (v instanceof Map) return "map";
+                if (v instanceof FluxFunction) return "function";
+                if (v instanceof FluxTask) return "task";
+                return "unknown";
+            }
+
+            @Override
+            public int arity() {
+                return 1;
+            }
+        }));
+
+
+        // range(start, end)
+        SHARED.put("range", new BuiltinFunction("range", new NativeFunction() {
+            @Override
+            public Object call(List<Object> arguments) {
+                Object first = arguments.get(0);
+                Object last = arguments.get(1);
+                if (!(first instanceof Double) || !(last instanceof Double)) {
+                    throw new RuntimeException("[Flux Runtime Error]\nrange() expects two numbers.");
+                }
+                double start = (double) first;
+                double end = (double) last;
+                if (start != Math.floor(start) || end != Math.floor(end)) {
+                    throw new RuntimeException("[Flux Runtime Error]\nrange() expects whole numbers.");
+                }
+
+                // Lazy: the numbers are computed as they are read
+                double count = Math.max(0, end - start);
+                if (count > Integer.MAX_VALUE) {
+                    throw new RuntimeException("[Flux Runtime Error]\nrange() can hold at most " + Integer.MAX_VALUE + " numbers.");
+                }
+                return FluxArray.range(start, (int) count);
+            }
+
+            @Override
+            public int arity() {
+                return 2;
+            }
+        }));
+
+        // floor(number)
+        SHARED.put("floor", new BuiltinFunction("floor", new NativeFunction() {
+            @Override
+            public Object call(List<Object> arguments) {
+                double value = (double) arguments.get(0);
+                return (double) Math.floor(value);
+            }
+
+            @Override
+            public int arity() {
+                return 1;
+            }
+        }));
+
+        // ceil(number)
+        SHARED.put("ceil", new BuiltinFunction("ceil", new NativeFunction() {
+            @Override
+            public Object call(List<Object> arguments) {
+                double value = (double) arguments.get(0);
+                return (double) Math.ceil(value);
+            }
+
+            @Override
+            public int arity() {
+                return 1;
+            }
+        }));
+
+        // round(number)
+        SHARED.put("round", new BuiltinFunction("round", new NativeFunction() {
+            @Override
+            public Object call(List<Object> arguments) {
+                double value = (double) arguments.get(0);
+                return (double) Math.round(value);
+            }
+
+            @Override
+            public int arity() {
+                return 1;
+            }
+        }));
+
+        // sqrt(number)
+        SHARED.put("sqrt", new BuiltinFunction("sqrt", new NativeFunction() {
+            @Override
+            public Object call(List<Object> arguments) {
+                double value = (double) arguments.get(0);
+                return Math.sqrt(value);
+            }
+
+            @Override
+            public int arity() {
+                return 1;
+            }
+        }));
+
+        // abs(number)
+        SHARED.put("abs", new BuiltinFunction("abs", new NativeFunction() {
+            @Override
+            public Object call(List<Object> arguments) {
+                double value = (double) arguments.get(0);
+                return Math.abs(value);
+            }
+
+            @Override
+            public int arity() {
+                return 1;
+            }
+        }));
+
+        // min(a, b)
+        SHARED.put("min", new BuiltinFunction("min", new NativeFunction() {
+            @Override
+            public Object call(List<Object> arguments) {
+                double a = (double) arguments.get(0);
+                double b = (double) arguments.get(1);
+                return Math.min(a, b);
+            }
+
+            @Override
+            public int arity() {
+                return 2;
+            }
+        }));
+
+        // max(a, b)
+        SHARED.put("max", new BuiltinFunction("max", new NativeFunction() {
+            @Override
+            public Object call(List<Object> arguments) {
+                double a = (double) arguments.get(0);
+                double b = (double) arguments.get(1);
+                return Math.max(a, b);
+            }
+
+            @Override
+            public int arity() {
+                return 2;
+            }
+        }));
+
+        // toNumber(value)
+        SHARED.put("toNumber", new BuiltinFunction("toNumber", new NativeFunction() {
+            @Override
+            public Object call(List<Object> arguments) {
+                Object value = arguments.get(0);
+                if (value instanceof Double) return value;
+                if (value instanceof Boolean) return ((Boolean) value) ? 1.0 : 0.0;
+                if (value instanceof FluxString) {
+                    try {
+                        return Double.parseDouble(((FluxString) value).getValue());
+                    } catch (NumberFormatException e) {
+                        throw new RuntimeException("[Flux Runtime Error]\nCannot convert string to number.");
+                    }
+                }
+                throw new RuntimeException("[Flux Runtime Error]\nCannot convert value to number.");
+            }
+
+            @Override
+            public int arity() {
+                return 1;
+            }
+        }));
+
+        // toString(value)
+        SHARED.put("toString", new BuiltinFunction("toString", new NativeFunction() {
+            @Override
+            public Object call(List<Object> arguments) {
+                Object value = arguments.get(0);
+                if (value == null) return new FluxString("null");
+                if (value instanceof FluxString) return value;
+                if (value instanceof FluxArray) return new FluxString(value.toString());
+                if (value instanceof Boolean) return new FluxString(value.toString());
+                if (value instanceof Double) return new FluxString(String.format("%g", value));
+                return new FluxString(value.toString());
+            }
+
+            @Override
+            public int arity() {
+                return 1;
+            }
+        }));
+    }
+}
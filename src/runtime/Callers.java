@@ -0,0 +1,47 @@
+package runtime;
+
+import java.util.List;
+
+// The FunctionCaller of the engine running on each thread. Engines install
+// themselves when they start running code, so builtins such as map() can
+// call back into the script that called them.
+public final class Callers {
+
+    private static final ThreadLocal<FunctionCaller> CURRENT = new ThreadLocal<>();
+
+    // Installs `caller` for this thread and returns the one to restore on exit()
+    public static FunctionCaller enter(FunctionCaller caller) {
+        FunctionCaller previous = CURRENT.get();
+        CURRENT.set(caller);
+        return previous;
+    }
+
+    public static void exit(FunctionCaller previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    public static FunctionCaller current() {
+        FunctionCaller caller = CURRENT.get();
+        if (caller == null) {
+            throw new RuntimeException("[Flux Runtime Error]\nNo script is running on this thread.");
+        }
+        return caller;
+    }
+
+    // Runs callee(arguments) with `caller` installed: the body of a task or
+    // of one chunk of a parallel array operation
+    public static Object call(FunctionCaller caller, Object callee, List<Object> arguments) {
+        FunctionCaller previous = enter(caller);
+        try {
+            return caller.call(callee, arguments);
+        } finally {
+            exit(previous);
+        }
+    }
+
+    private Callers() {}
+}
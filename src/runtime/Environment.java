@@ -1,30 +1,149 @@
 package runtime;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import lexer.Symbol;
 
 public class Environment {
 
-    private final Map<String, Object> values = new HashMap<>();
+    // Marks a slot whose variable has not been assigned yet
+    public static final Object UNDEFINED = new Object();
+
+    // Marks a slot whose value is an unboxed number held in the number lane
+    public static final Object NUMBER = new Object();
+
+    private String[] names;
+    private Object[] values;
+    private double[] numbers; // allocated on the first setNumber()
+    private int size;
+    private int[] index; // global frame only: slot by symbol id, -1 for none
     private final Environment enclosing;
 
-    // Global environment
+    // Global environment (grows as the resolver finds new names)
     public Environment() {
         this.enclosing = null;
+        this.names = new String[16];
+        this.values = new Object[16];
+        this.index = new int[64];
+        Arrays.fill(index, -1);
+        Arrays.fill(values, UNDEFINED);
+    }
+
+    // Global environment with the same names and values as `template`,
+    // which is left untouched; used to give each script run its own globals
+    public Environment(Environment template) {
+        this(template, template.enclosing);
+    }
+
+    // Copy of `template` inside `enclosing` instead of the template's own
+    public Environment(Environment template, Environment enclosing) {
+        this.enclosing = enclosing;
+        this.names = template.names.clone();
+        this.values = template.values.clone();
+        this.numbers = template.numbers == null ? null : template.numbers.clone();
+        this.size = template.size;
+        this.index = template.index == null ? null : template.index.clone();
+    }
+
+    // Puts a frame copied from `template` back into the template's state.
+    // This is one array copy of the template's slots, however much the run
+    // did; names defined since the copy are dropped.
+    public void reset(Environment template) {
+        System.arraycopy(template.values, 0, values, 0, template.size);
+        if (size != template.size) {
+            Arrays.fill(names, template.size, size, null);
+            Arrays.fill(values, template.size, size, UNDEFINED);
+            size = template.size;
+            index = template.index.clone();
+        }
     }
 
-    // Nested environment (for functions, blocks, etc.)
-    public Environment(Environment enclosing) {
+    // Function frame with the slot layout computed by the resolver
+    public Environment(Environment enclosing, String[] layout) {
         this.enclosing = enclosing;
+        this.names = layout;
+        this.values = new Object[layout.length];
+        this.size = layout.length;
+        this.index = null;
+        Arrays.fill(values, UNDEFINED);
+    }
+
+    // Returns the slot for a name, adding a new one if it does not exist yet
+    public int slot(String name) {
+        int slot = indexOf(name);
+        if (slot >= 0) return slot;
+
+        if (size == names.length) {
+            int capacity = Math.max(4, size * 2);
+            names = Arrays.copyOf(names, capacity);
+            values = Arrays.copyOf(values, capacity);
+            Arrays.fill(values, size, capacity, UNDEFINED);
+            if (numbers != null) numbers = Arrays.copyOf(numbers, capacity);
+        }
+
+        names[size] = name;
+        if (index != null) {
+            int id = Symbol.intern(name).id;
+            if (id >= index.length) {
+                int length = index.length;
+                index = Arrays.copyOf(index, Math.max(id + 1, length * 2));
+                Arrays.fill(index, length, index.length, -1);
+            }
+            index[id] = size;
+        }
+        return size++;
+    }
+
+    public Object get(int slot) {
+        Object value = values[slot];
+        return value == NUMBER ? (Object) numbers[slot] : value;
+    }
+
+    public void set(int slot, Object value) {
+        values[slot] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Environment getEnclosing() {
+        return enclosing;
+    }
+
+    // Unboxed access for the VM: raw() may return NUMBER, read it with number()
+    public Object raw(int slot) {
+        return values[slot];
+    }
+
+    public double number(int slot) {
+        return numbers[slot];
+    }
+
+    public void setNumber(int slot, double value) {
+        if (numbers == null) numbers = new double[values.length];
+        numbers[slot] = value;
+        values[slot] = NUMBER;
+    }
+
+    public Environment ancestor(int depth) {
+        Environment env = this;
+        for (int i = 0; i < depth; i++) {
+            env = env.enclosing;
+        }
+        return env;
     }
 
     public void define(String name, Object value) {
-        values.put(name, value);
+        values[slot(name)] = value;
     }
 
+    // Slow path: walks the chain by name (unresolved code, unassigned slots)
     public Object get(String name) {
-        if (values.containsKey(name)) {
-            return values.get(name);
+        int slot = indexOf(name);
+        if (slot >= 0 && values[slot] != UNDEFINED) {
+            return get(slot);
         }
 
         if (enclosing != null) {
@@ -37,6 +156,26 @@ public class Environment {
     }
 
     public Map<String, Object> dump() {
-        return values;
+        Map<String, Object> result = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            if (values[i] != UNDEFINED) {
+                result.put(names[i], get(i));
+            }
+        }
+        return result;
+    }
+
+    // Slot of a name in this frame, or -1 when it has none
+    public int indexOf(String name) {
+        if (index != null) {
+            // A name that was never interned cannot have a slot; looking it
+            // up neither takes the interning lock nor adds it to the table
+            Symbol symbol = Symbol.lookup(name);
+            return symbol == null || symbol.id >= index.length ? -1 : index[symbol.id];
+        }
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(name)) return i;
+        }
+        return -1;
     }
 }
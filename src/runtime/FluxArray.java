@@ -1,156 +1,402 @@
 package runtime;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import lexer.Symbol;
 import lexer.Token;
 
 public class FluxArray {
-    private final List<Object> value;
 
-    public FluxArray(List<Object> value) {
-        this.value = value;
+    // Elements live unboxed in `numbers` while every one of them is a number,
+    // and in `objects` from the first other value on. When neither is set the
+    // array is an untouched range(): element i is first + i, and storage is
+    // only allocated on the first write.
+    //
+    // Storage is a circular buffer: element 0 is in slot `head` and the rest
+    // follow it, wrapping around to slot 0, so both ends grow and shrink in
+    // amortized O(1).
+    private double[] numbers;
+    private Object[] objects;
+    private double first;
+    private int head;
+    private int size;
+
+    // Method table shared by all arrays
+    private static final IntMap<BuiltinMethod<FluxArray>> METHODS = new IntMap<>();
+
+    static {
+        define("len", 0, (self, a, b) -> (double) self.size);
+
+        define("push", 1, (self, a, b) -> {
+            self.add(a);
+            return (double) self.size;
+        });
+
+        define("pop", 0, (self, a, b) -> {
+            if (self.size == 0) {
+                throw new RuntimeException("[Flux Runtime Error]\nCannot pop from empty array.");
+            }
+            return self.removeLast();
+        });
+
+        define("shift", 0, (self, a, b) -> {
+            if (self.size == 0) {
+                throw new RuntimeException("[Flux Runtime Error]\nCannot shift from empty array.");
+            }
+            return self.removeFirst();
+        });
+
+        define("unshift", 1, (self, a, b) -> {
+            self.addFirst(a);
+            return (double) self.size;
+        });
+
+        define("contains", 1, (self, a, b) -> self.indexOf(a) >= 0);
+
+        define("indexOf", 1, (self, a, b) -> {
+            int idx = self.indexOf(a);
+            return idx >= 0 ? (double) idx : -1.0;
+        });
+
+        define("reverse", 0, (self, a, b) -> {
+            self.materialize();
+            for (int i = 0, j = self.size - 1; i < j; i++, j--) {
+                int x = self.slot(i);
+                int y = self.slot(j);
+                if (self.numbers != null) {
+                    double t = self.numbers[x];
+                    self.numbers[x] = self.numbers[y];
+                    self.numbers[y] = t;
+                } else {
+                    Object t = self.objects[x];
+                    self.objects[x] = self.objects[y];
+                    self.objects[y] = t;
+                }
+            }
+            return self;
+        });
+
+        define("sort", 0, (self, a, b) -> {
+            if (self.isRange()) {
+                return self; // already in order
+            }
+            if (self.head != 0) {
+                self.unwrap(self.capacity());
+            }
+            if (self.numbers != null) {
+                Arrays.sort(self.numbers, 0, self.size);
+                return self;
+            }
+            Arrays.sort(self.objects, 0, self.size, (x, y) -> {
+                if (x instanceof Double && y instanceof Double) {
+                    return Double.compare((Double) x, (Double) y);
+                }
+                return 0;
+            });
+            return self;
+        });
+
+        // Higher-order methods call back into the running script
+        define("map", 1, (self, a, b) -> new FluxArray(ArrayFunctions.map(a, self.toArray())));
+        define("filter", 1, (self, a, b) -> new FluxArray(ArrayFunctions.filter(a, self.toArray())));
+        define("reduce", 2, (self, a, b) -> ArrayFunctions.reduce(a, b, self.toArray()));
+        define("parMap", 1, (self, a, b) -> new FluxArray(ArrayFunctions.parMap(a, self.toArray())));
+        define("parReduce", 2, (self, a, b) -> ArrayFunctions.parReduce(a, b, self.toArray()));
+    }
+
+    private static void define(String name, int arity, BuiltinMethod.Body<FluxArray> body) {
+        METHODS.put(Symbol.intern(name).id, new BuiltinMethod<>(name, arity, body));
+    }
+
+    public FluxArray(List<Object> values) {
+        size = values.size();
+        for (Object value : values) {
+            if (!(value instanceof Double)) {
+                objects = values.toArray(new Object[Math.max(size, 4)]);
+                return;
+            }
+        }
+        numbers = new double[Math.max(size, 4)];
+        for (int i = 0; i < size; i++) {
+            numbers[i] = (double) values.get(i);
+        }
+    }
+
+    // Takes ownership of the first `size` slots of `numbers`
+    public FluxArray(double[] numbers, int size) {
+        this(numbers, null, size);
+    }
+
+    private FluxArray(double[] numbers, Object[] objects, int size) {
+        this.numbers = numbers;
+        this.objects = objects;
+        this.size = size;
+    }
+
+    // first, first + 1, ... without storing any of them
+    public static FluxArray range(double first, int size) {
+        FluxArray range = new FluxArray(null, null, size);
+        range.first = first;
+        return range;
+    }
+
+    public static BuiltinMethod<FluxArray> method(Symbol name) {
+        BuiltinMethod<FluxArray> method = METHODS.get(name.id);
+        if (method == null) {
+            throw new RuntimeException("[Flux Runtime Error]\nUndefined method '" + name + "' on array.");
+        }
+        return method;
     }
 
     public Object get(Token name) {
-        switch (name.lexeme) {
-            case "len":
-                return new BuiltinFunction("len", new NativeFunction() {
-                    @Override
-                    public Object call(List<Object> arguments) {
-                        return (double) value.size();
-                    }
-                    @Override
-                    public int arity() {
-                        return 0;
-                    }
-                });
-
-            case "push":
-                return new BuiltinFunction("push", new NativeFunction() {
-                    @Override
-                    public Object call(List<Object> arguments) {
-                        value.add(arguments.get(0));
-                        return (double) value.size();
-                    }
-                    @Override
-                    public int arity() {
-                        return 1;
-                    }
-                });
-
-            case "pop":
-                return new BuiltinFunction("pop", new NativeFunction() {
-                    @Override
-                    public Object call(List<Object> arguments) {
-                        if (value.isEmpty()) {
-                            throw new RuntimeException("[Flux Runtime Error]\nCannot pop from empty array.");
-                        }
-                        return value.remove(value.size() - 1);
-                    }
-                    @Override
-                    public int arity() {
-                        return 0;
-                    }
-                });
-
-            case "shift":
-                return new BuiltinFunction("shift", new NativeFunction() {
-                    @Override
-                    public Object call(List<Object> arguments) {
-                        if (value.isEmpty()) {
-                            throw new RuntimeException("[Flux Runtime Error]\nCannot shift from empty array.");
-                        }
-                        return value.remove(0);
-                    }
-                    @Override
-                    public int arity() {
-                        return 0;
-                    }
-                });
-
-            case "unshift":
-                return new BuiltinFunction("unshift", new NativeFunction() {
-                    @Override
-                    public Object call(List<Object> arguments) {
-                        value.add(0, arguments.get(0));
-                        return (double) value.size();
-                    }
-                    @Override
-                    public int arity() {
-                        return 1;
-                    }
-                });
-
-            case "contains":
-                return new BuiltinFunction("contains", new NativeFunction() {
-                    @Override
-                    public Object call(List<Object> arguments) {
-                        return value.contains(arguments.get(0));
-                    }
-                    @Override
-                    public int arity() {
-                        return 1;
-                    }
-                });
-
-            case "indexOf":
-                return new BuiltinFunction("indexOf", new NativeFunction() {
-                    @Override
-                    public Object call(List<Object> arguments) {
-                        int idx = value.indexOf(arguments.get(0));
-                        return idx >= 0 ? (double) idx : -1.0;
-                    }
-                    @Override
-                    public int arity() {
-                        return 1;
-                    }
-                });
-
-            case "reverse":
-                return new BuiltinFunction("reverse", new NativeFunction() {
-                    @Override
-                    public Object call(List<Object> arguments) {
-                        java.util.Collections.reverse(value);
-                        return new FluxArray(value);
-                    }
-                    @Override
-                    public int arity() {
-                        return 0;
-                    }
-                });
-
-            case "sort":
-                return new BuiltinFunction("sort", new NativeFunction() {
-                    @Override
-                    public Object call(List<Object> arguments) {
-                        value.sort((a, b) -> {
-                            if (a instanceof Double && b instanceof Double) {
-                                return Double.compare((Double) a, (Double) b);
-                            }
-                            return 0;
-                        });
-                        return new FluxArray(value);
-                    }
-                    @Override
-                    public int arity() {
-                        return 0;
-                    }
-                });
-
-            default:
-                throw new RuntimeException("[Flux Runtime Error]\nUndefined method '" + name.lexeme + "' on array.");
-        }
-    }
-
-    public List<Object> getValue() {
-        return value;
+        return method(name.symbol).bind(this);
+    }
+
+    // ===================== ELEMENTS =====================
+
+    public int size() {
+        return size;
+    }
+
+    // True while every element is a number, so number() may be used
+    public boolean isNumeric() {
+        return objects == null;
+    }
+
+    public Object get(int index) {
+        checkIndex(index);
+        return element(index);
+    }
+
+    // Element of a numeric array, without boxing it
+    public double number(int index) {
+        checkIndex(index);
+        return numbers != null ? numbers[slot(index)] : first + index;
+    }
+
+    public void set(int index, Object value) {
+        checkIndex(index);
+        materialize();
+        if (numbers != null) {
+            if (value instanceof Double) {
+                numbers[slot(index)] = (double) value;
+                return;
+            }
+            generalize();
+        }
+        objects[slot(index)] = value;
+    }
+
+    public void add(Object value) {
+        prepare(value);
+        store(slot(size), value);
+        size++;
+    }
+
+    public Object[] toArray() {
+        Object[] result = new Object[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = element(i);
+        }
+        return result;
+    }
+
+    // Walks the live array by index, so elements added by the loop body are
+    // visited too
+    public FluxIterator iterator() {
+        return new FluxIterator() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public Object next() {
+                return element(index++);
+            }
+
+            @Override
+            public boolean isNumeric() {
+                return objects == null;
+            }
+
+            @Override
+            public double nextNumber() {
+                return numbers != null ? numbers[slot(index++)] : first + index++;
+            }
+        };
+    }
+
+    // New array with the same elements; the elements themselves are not copied
+    public FluxArray copy() {
+        if (isRange()) {
+            return range(first, size);
+        }
+        if (numbers != null) {
+            double[] elements = new double[Math.max(size, 4)];
+            copyElements(elements);
+            return new FluxArray(elements, null, size);
+        }
+        Object[] elements = new Object[Math.max(size, 4)];
+        copyElements(elements);
+        return new FluxArray(null, elements, size);
+    }
+
+    private void addFirst(Object value) {
+        prepare(value);
+        head = head == 0 ? capacity() - 1 : head - 1;
+        store(head, value);
+        size++;
+    }
+
+    private Object removeFirst() {
+        size--;
+        if (isRange()) {
+            return first++;
+        }
+        Object removed = numbers != null ? (Object) numbers[head] : objects[head];
+        if (objects != null) objects[head] = null;
+        head = head + 1 == capacity() ? 0 : head + 1;
+        return removed;
+    }
+
+    private Object removeLast() {
+        size--;
+        if (isRange()) {
+            return first + size;
+        }
+        int last = slot(size);
+        Object removed = numbers != null ? (Object) numbers[last] : objects[last];
+        if (objects != null) objects[last] = null;
+        return removed;
+    }
+
+    // Makes room for one more element like `value`
+    private void prepare(Object value) {
+        materialize();
+        if (numbers != null && !(value instanceof Double)) {
+            generalize();
+        }
+        int capacity = capacity();
+        if (size == capacity) {
+            unwrap(Math.max(4, capacity + (capacity >> 1)));
+        }
+    }
+
+    private void store(int slot, Object value) {
+        if (numbers != null) {
+            numbers[slot] = (double) value;
+        } else {
+            objects[slot] = value;
+        }
+    }
+
+    // Same equality as Double.equals for numbers, equals() for the rest
+    private int indexOf(Object value) {
+        if (isRange()) {
+            if (!(value instanceof Double)) return -1;
+            // The only candidate is the element at the offset; compared the
+            // same way as below, so -0 and 0 differ here too
+            double target = (double) value;
+            double offset = target - first;
+            if (!(offset >= 0 && offset < size)) return -1;
+            int index = (int) offset;
+            return Double.compare(first + index, target) == 0 ? index : -1;
+        }
+        if (numbers != null) {
+            if (!(value instanceof Double)) return -1;
+            double target = (double) value;
+            for (int i = 0; i < size; i++) {
+                if (Double.compare(numbers[slot(i)], target) == 0) return i;
+            }
+            return -1;
+        }
+        for (int i = 0; i < size; i++) {
+            if (Objects.equals(value, objects[slot(i)])) return i;
+        }
+        return -1;
+    }
+
+    private boolean isRange() {
+        return numbers == null && objects == null;
+    }
+
+    // Gives an untouched range() real storage before its first write
+    private void materialize() {
+        if (isRange()) {
+            numbers = new double[Math.max(size, 4)];
+            for (int i = 0; i < size; i++) {
+                numbers[i] = first + i;
+            }
+        }
+    }
+
+    // Unchecked read of element `index`
+    private Object element(int index) {
+        if (numbers != null) return numbers[slot(index)];
+        if (objects != null) return objects[slot(index)];
+        return first + index;
+    }
+
+    // Storage slot of element `index`
+    private int slot(int index) {
+        int slot = head + index;
+        int capacity = capacity();
+        return slot < capacity ? slot : slot - capacity;
+    }
+
+    private int capacity() {
+        return numbers != null ? numbers.length : objects.length;
+    }
+
+    // Copies the elements, in order, to the start of `target`
+    private void copyElements(Object target) {
+        Object source = numbers != null ? numbers : objects;
+        int wrapped = Math.max(0, head + size - capacity());
+        System.arraycopy(source, head, target, 0, size - wrapped);
+        System.arraycopy(source, 0, target, size - wrapped, wrapped);
+    }
+
+    // Moves the elements to new storage of `capacity` slots, from slot 0 on
+    private void unwrap(int capacity) {
+        if (numbers != null) {
+            double[] moved = new double[capacity];
+            copyElements(moved);
+            numbers = moved;
+        } else {
+            Object[] moved = new Object[capacity];
+            copyElements(moved);
+            objects = moved;
+        }
+        head = 0;
+    }
+
+    // Moves to object storage for good, on the first element that is not a number
+    private void generalize() {
+        Object[] moved = new Object[Math.max(numbers.length, 4)];
+        for (int i = 0; i < size; i++) {
+            moved[i] = numbers[slot(i)];
+        }
+        objects = moved;
+        numbers = null;
+        head = 0;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new RuntimeException("Runtime Error: Array index out of bounds.");
+        }
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder("[");
-        for (int i = 0; i < value.size(); i++) {
+        for (int i = 0; i < size; i++) {
             if (i > 0) sb.append(", ");
-            Object obj = value.get(i);
+            Object obj = element(i);
             if (obj instanceof FluxString) {
                 sb.append('"').append(((FluxString) obj).getValue()).append('"');
             } else {
@@ -1,44 +1,60 @@
 package runtime;
 
 import ast.Stmt;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import lexer.Symbol;
 import lexer.Token;
 
 public class FluxClass {
+    private static final Symbol INIT = Symbol.intern("init");
+
     private final String name;
     private final List<Token> fields;
-    private final Map<String, FluxFunction> methods;
+    private final IntMap<FluxFunction> methods; // keyed by symbol id
+    private final Shape shape; // root shape shared by new instances
 
-    public FluxClass(String name, List<Token> fields, List<Stmt.Function> methods) {
-    this.name = name;
-    this.fields = fields;
-    this.methods = new HashMap<>();
+    public FluxClass(String name, List<Token> fields, List<Stmt.Function> methods, Environment closure) {
+    this(name, fields, new IntMap<>(methods.size()));
     for (Stmt.Function method : methods) {
         this.methods.put(
-            method.name.lexeme,
+            method.name.symbol.id,
             new FluxFunction(
                 method.name,
                 method.params,
                 method.body,
-                null
+                method.layout,
+                closure
             )
         );
     }
 }
-public FluxFunction findMethod(String name) {
-    return methods.get(name);
+    // Methods already built by the caller (used by the bytecode VM)
+    public FluxClass(String name, List<Token> fields, IntMap<FluxFunction> methods) {
+        this.name = name;
+        this.fields = fields;
+        this.methods = methods;
+
+        // Declared fields become the first slots of every instance
+        Symbol[] names = new Symbol[fields.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = fields.get(i).symbol;
+        }
+        this.shape = new Shape(this, names);
+    }
+
+public FluxFunction findMethod(Symbol name) {
+    return methods.get(name.id);
 }
+
+    // The class's init() method, or null
+    public FluxFunction initializer() {
+        return methods.get(INIT.id);
+    }
 public String getName() {
     return name;
 }
     public FluxInstance instantiate() {
-        Map<String, Object> values = new HashMap<>();
-        for (Token field : fields) {
-            values.put(field.lexeme, null);
-        }
-        return new FluxInstance(this, values);
+        return new FluxInstance(this, shape);
     }
 
     @Override
@@ -1,6 +1,7 @@
 package runtime;
 
 import ast.Stmt;
+import compiler.Prototype;
 import java.util.List;
 import lexer.Token;
 
@@ -9,20 +10,70 @@ public class FluxFunction {
     private final Token name;
     private final List<Token> params;
     private final List<Stmt> body;
+    private final String[] layout;
     private final Environment closure;
+    private final FluxInstance receiver; // bound `this`, methods only
+    private final Prototype prototype;   // bytecode, VM functions only
 
-    public FluxFunction(Token name, List<Token> params, List<Stmt> body, Environment closure) {
+    public FluxFunction(Token name, List<Token> params, List<Stmt> body, String[] layout, Environment closure) {
+        this(name, params, body, layout, closure, null, null);
+    }
+
+    // Function compiled for the bytecode VM
+    public FluxFunction(Prototype prototype, Environment closure) {
+        this(prototype.name, prototype.params, null, prototype.layout, closure, null, prototype);
+    }
+
+    private FluxFunction(Token name, List<Token> params, List<Stmt> body, String[] layout,
+                         Environment closure, FluxInstance receiver, Prototype prototype) {
         this.name = name;
         this.params = params;
         this.body = body;
+        this.layout = layout;
         this.closure = closure;
+        this.receiver = receiver;
+        this.prototype = prototype;
     }
 
-    // 🔥 THIS IS THE CRITICAL METHOD
+    // Methods keep `this` in slot 0 of their frame, so binding only records the receiver
     public FluxFunction bind(FluxInstance instance) {
-        Environment env = new Environment(closure);
-        env.define("this", instance);
-        return new FluxFunction(name, params, body, env);
+        return new FluxFunction(name, params, body, layout, closure, instance, prototype);
+    }
+
+    // Same function over another closure and receiver (see Tasks.isolate)
+    public FluxFunction copy(Environment closure, FluxInstance receiver) {
+        return new FluxFunction(name, params, body, layout, closure, receiver, prototype);
+    }
+
+    // Creates the call frame; arguments go into the slots that follow `this`
+    public Environment newFrame() {
+        return newFrame(receiver);
+    }
+
+    // Frame for calling this method on `receiver` without binding it first
+    public Environment newFrame(FluxInstance receiver) {
+        String[] slots = layout;
+        if (slots == null) {
+            // Not resolved: lay out `this` and the parameters only
+            int offset = receiver != null ? 1 : 0;
+            slots = new String[params.size() + offset];
+            if (receiver != null) slots[0] = "this";
+            for (int i = 0; i < params.size(); i++) {
+                slots[i + offset] = params.get(i).lexeme();
+            }
+        }
+
+        Environment frame = new Environment(closure, slots);
+        if (receiver != null) frame.set(0, receiver);
+        return frame;
+    }
+
+    public int firstParamSlot() {
+        return firstParamSlot(receiver);
+    }
+
+    public int firstParamSlot(FluxInstance receiver) {
+        return receiver != null ? 1 : 0;
     }
 
     public List<Token> getParams() {
@@ -37,8 +88,16 @@ public class FluxFunction {
         return closure;
     }
 
+    public FluxInstance getReceiver() {
+        return receiver;
+    }
+
+    public Prototype getPrototype() {
+        return prototype;
+    }
+
     @Override
     public String toString() {
-        return "<fn " + name.lexeme + ">";
+        return name == null ? "<fn>" : "<fn " + name.lexeme() + ">";
     }
 }
@@ -1,39 +1,74 @@
 package runtime;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 import lexer.Token;
 
 public class FluxInstance {
 
     private final FluxClass klass;
-    private final Map<String, Object> fields = new HashMap<>();
+    private Shape shape;
+    private Object[] values;
 
-    public FluxInstance(FluxClass klass, Map<String, Object> initialFields) {
+    public FluxInstance(FluxClass klass, Shape shape) {
         this.klass = klass;
-        fields.putAll(initialFields);
+        this.shape = shape;
+        this.values = new Object[shape.size()]; // declared fields start as null
+    }
+
+    public FluxClass getKlass() {
+        return klass;
+    }
+
+    public Shape getShape() {
+        return shape;
+    }
+
+    // Slot access for callers that already resolved the slot against getShape()
+    public Object getField(int slot) {
+        return values[slot];
+    }
+
+    public void setField(int slot, Object value) {
+        values[slot] = value;
+    }
+
+    // Same class, shape and field values; the fields themselves are not copied
+    public FluxInstance copy() {
+        FluxInstance copy = new FluxInstance(klass, shape);
+        copy.values = values.clone();
+        return copy;
     }
 
     public Object get(Token name) {
 
         // 1️⃣ Field access
-        if (fields.containsKey(name.lexeme)) {
-            return fields.get(name.lexeme);
+        int slot = shape.slotOf(name.symbol);
+        if (slot >= 0) {
+            return values[slot];
         }
 
         // 2️⃣ Method access → BIND HERE ✅
-        FluxFunction method = klass.findMethod(name.lexeme);
+        FluxFunction method = klass.findMethod(name.symbol);
         if (method != null) {
             return method.bind(this); // 🔥 THIS WAS MISSING
         }
 
         throw new RuntimeException(
-            "[Flux Runtime Error]\nUndefined property '" + name.lexeme + "'."
+            "[Flux Runtime Error]\nUndefined property '" + name.lexeme() + "'."
         );
     }
 
     public void set(Token name, Object value) {
-        fields.put(name.lexeme, value);
+        int slot = shape.slotOf(name.symbol);
+        if (slot < 0) {
+            // New field: move to the next shape and grow the storage
+            shape = shape.with(name.symbol);
+            slot = shape.size() - 1;
+            if (slot >= values.length) {
+                values = Arrays.copyOf(values, Math.max(4, values.length * 2));
+            }
+        }
+        values[slot] = value;
     }
 
     
@@ -0,0 +1,70 @@
+package runtime;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What `for name in value` walks, shared by both execution engines.
+ *
+ * Arrays are walked by index while the loop runs, so elements pushed by the
+ * body are visited too; a range() that was never written to computes each
+ * element as it goes and holds no storage. Maps yield their keys as they
+ * were when the loop started. Strings yield one-character strings.
+ */
+public abstract class FluxIterator {
+
+    public abstract boolean hasNext();
+
+    public abstract Object next();
+
+    // True when the next element is a number and nextNumber() may be used
+    public boolean isNumeric() {
+        return false;
+    }
+
+    // Next element without boxing it
+    public double nextNumber() {
+        return (double) next();
+    }
+
+    public static FluxIterator of(Object value) {
+        if (value instanceof FluxArray) {
+            return ((FluxArray) value).iterator();
+        }
+        if (value instanceof Map) {
+            List<Object> keys = new ArrayList<>(((Map<?, ?>) value).keySet());
+            Iterator<Object> it = keys.iterator();
+            return new FluxIterator() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public Object next() {
+                    Object key = it.next();
+                    return key instanceof String ? new FluxString((String) key) : key;
+                }
+            };
+        }
+        if (value instanceof FluxString) {
+            String string = ((FluxString) value).getValue();
+            return new FluxIterator() {
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return index < string.length();
+                }
+
+                @Override
+                public Object next() {
+                    return new FluxString(String.valueOf(string.charAt(index++)));
+                }
+            };
+        }
+        throw new RuntimeException("[Flux Runtime Error]\nCan only loop over arrays, maps and strings.");
+    }
+}
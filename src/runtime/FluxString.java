@@ -2,133 +2,137 @@ package runtime;
 
 import java.util.ArrayList;
 import java.util.List;
+import lexer.Symbol;
 import lexer.Token;
 
 public class FluxString {
-    private final String value;
+
+    // A string is either flat, in `value`, or the first `length` characters
+    // of a `buffer` it may share with longer strings. Concatenation appends
+    // to the buffer when its left operand ends where the buffer ends, so
+    // `s = s + x` in a loop copies each character once rather than once per
+    // step. Characters are only ever appended past the end of every string
+    // using the buffer, so each string's own characters never change.
+    // `value` is filled in on first read; a String is safe to publish
+    // without locking, so a race only computes it twice.
+    private String value;
+    private final StringBuilder buffer; // null for flat strings
+    private final int length;
+
+    // Shorter results stay flat: a buffer only pays off for a string that keeps growing
+    private static final int FLAT_LIMIT = 64;
+
+    // Method table shared by all strings
+    private static final IntMap<BuiltinMethod<FluxString>> METHODS = new IntMap<>();
+
+    static {
+        define("len", 0, (self, a, b) -> (double) self.length);
+
+        define("substring", 2, (self, a, b) -> {
+            int start = ((Double) a).intValue();
+            int end = ((Double) b).intValue();
+            return new FluxString(self.getValue().substring(start, end));
+        });
+
+        define("upper", 0, (self, a, b) -> new FluxString(self.getValue().toUpperCase()));
+
+        define("lower", 0, (self, a, b) -> new FluxString(self.getValue().toLowerCase()));
+
+        define("split", 1, (self, a, b) -> {
+            String delimiter = ((FluxString) a).getValue();
+            String[] parts = self.getValue().split(java.util.regex.Pattern.quote(delimiter));
+            List<Object> result = new ArrayList<>();
+            for (String part : parts) {
+                result.add(new FluxString(part));
+            }
+            return new FluxArray(result);
+        });
+
+        define("trim", 0, (self, a, b) -> new FluxString(self.getValue().trim()));
+
+        define("startsWith", 1, (self, a, b) -> {
+            String prefix = ((FluxString) a).getValue();
+            return self.getValue().startsWith(prefix);
+        });
+
+        define("endsWith", 1, (self, a, b) -> {
+            String suffix = ((FluxString) a).getValue();
+            return self.getValue().endsWith(suffix);
+        });
+    }
+
+    private static void define(String name, int arity, BuiltinMethod.Body<FluxString> body) {
+        METHODS.put(Symbol.intern(name).id, new BuiltinMethod<>(name, arity, body));
+    }
 
     public FluxString(String value) {
         this.value = value;
+        this.buffer = null;
+        this.length = value.length();
     }
 
-    public Object get(Token name) {
-        switch (name.lexeme) {
-            case "len":
-                return new BuiltinFunction("len", new NativeFunction() {
-                    @Override
-                    public Object call(List<Object> arguments) {
-                        return (double) value.length();
-                    }
-                    @Override
-                    public int arity() {
-                        return 0;
-                    }
-                });
-            case "substring":
-                return new BuiltinFunction("substring", new NativeFunction() {
-                    @Override
-                    public Object call(List<Object> arguments) {
-                        int start = ((Double) arguments.get(0)).intValue();
-                        int end = ((Double) arguments.get(1)).intValue();
-                        return new FluxString(value.substring(start, end));
-                    }
-                    @Override
-                    public int arity() {
-                        return 2;
-                    }
-                });
-
-            case "upper":
-                return new BuiltinFunction("upper", new NativeFunction() {
-                    @Override
-                    public Object call(List<Object> arguments) {
-                        return new FluxString(value.toUpperCase());
-                    }
-                    @Override
-                    public int arity() {
-                        return 0;
-                    }
-                });
-
-            case "lower":
-                return new BuiltinFunction("lower", new NativeFunction() {
-                    @Override
-                    public Object call(List<Object> arguments) {
-                        return new FluxString(value.toLowerCase());
-                    }
-                    @Override
-                    public int arity() {
-                        return 0;
-                    }
-                });
-
-            case "split":
-                return new BuiltinFunction("split", new NativeFunction() {
-                    @Override
-                    public Object call(List<Object> arguments) {
-                        String delimiter = ((FluxString) arguments.get(0)).getValue();
-                        String[] parts = value.split(java.util.regex.Pattern.quote(delimiter));
-                        List<Object> result = new ArrayList<>();
-                        for (String part : parts) {
-                            result.add(new FluxString(part));
-                        }
-                        return new FluxArray(result);
-                    }
-                    @Override
-                    public int arity() {
-                        return 1;
-                    }
-                });
-
-            case "trim":
-                return new BuiltinFunction("trim", new NativeFunction() {
-                    @Override
-                    public Object call(List<Object> arguments) {
-                        return new FluxString(value.trim());
-                    }
-                    @Override
-                    public int arity() {
-                        return 0;
-                    }
-                });
-
-            case "startsWith":
-                return new BuiltinFunction("startsWith", new NativeFunction() {
-                    @Override
-                    public Object call(List<Object> arguments) {
-                        String prefix = ((FluxString) arguments.get(0)).getValue();
-                        return value.startsWith(prefix);
-                    }
-                    @Override
-                    public int arity() {
-                        return 1;
-                    }
-                });
-
-            case "endsWith":
-                return new BuiltinFunction("endsWith", new NativeFunction() {
-                    @Override
-                    public Object call(List<Object> arguments) {
-                        String suffix = ((FluxString) arguments.get(0)).getValue();
-                        return value.endsWith(suffix);
-                    }
-                    @Override
-                    public int arity() {
-                        return 1;
-                    }
-                });
-
-            default:
-                throw new RuntimeException("[Flux Runtime Error]\nUndefined method '" + name.lexeme + "' on string.");
+    private FluxString(StringBuilder buffer, int length) {
+        this.buffer = buffer;
+        this.length = length;
+    }
+
+    // This string followed by `suffix`
+    public FluxString concat(String suffix) {
+        int total = length + suffix.length();
+        if (buffer != null) {
+            synchronized (buffer) {
+                if (buffer.length() == length) {
+                    buffer.append(suffix);
+                    return new FluxString(buffer, total);
+                }
+            }
+        }
+        if (total < FLAT_LIMIT) {
+            return new FluxString(getValue().concat(suffix));
+        }
+        // Room to grow, so the next few concatenations append in place
+        StringBuilder grown = new StringBuilder(total * 2);
+        grown.append(getValue()).append(suffix);
+        return new FluxString(grown, total);
+    }
+
+    public static BuiltinMethod<FluxString> method(Symbol name) {
+        BuiltinMethod<FluxString> method = METHODS.get(name.id);
+        if (method == null) {
+            throw new RuntimeException("[Flux Runtime Error]\nUndefined method '" + name + "' on string.");
         }
+        return method;
+    }
+
+    public Object get(Token name) {
+        return method(name.symbol).bind(this);
     }
 
     public String getValue() {
-        return value;
+        String flat = value;
+        if (flat == null) {
+            synchronized (buffer) {
+                flat = buffer.substring(0, length);
+            }
+            value = flat;
+        }
+        return flat;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof FluxString
+            && ((FluxString) other).length == length
+            && ((FluxString) other).getValue().equals(getValue());
+    }
+
+    @Override
+    public int hashCode() {
+        return getValue().hashCode();
     }
 
     @Override
     public String toString() {
-        return value;
+        return getValue();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,70 @@
+package runtime;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+// Value of `spawn f(args)`: a call running on its own thread
+public final class FluxTask {
+
+    private final FutureTask<Object> result;
+    private final Tasks.Scope scope;
+
+    FluxTask(Callable<Object> body, Tasks.Scope scope) {
+        this.scope = scope;
+        this.result = new FutureTask<>(body) {
+            @Override
+            protected void setException(Throwable failure) {
+                // Recorded before the task counts as done, so an await that
+                // returns has always seen it and can take it back out
+                scope.failed(FluxTask.this);
+                super.setException(failure);
+            }
+
+            @Override
+            protected void done() {
+                scope.finished();
+            }
+        };
+    }
+
+    Runnable body() {
+        return result;
+    }
+
+    // Waits for the call to finish. Yields what it returned, or throws what
+    // it threw, so an error (or `exit`) in a task surfaces where it is awaited.
+    // A task may be awaited any number of times.
+    public Object join() {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            scope.awaited(this);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException("[Flux Runtime Error]\n" + cause, cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("[Flux Runtime Error]\nInterrupted while awaiting a task.");
+        }
+    }
+
+    // What the finished task threw
+    Throwable failure() {
+        try {
+            result.get();
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<task>";
+    }
+}
@@ -0,0 +1,14 @@
+package runtime;
+
+import java.util.List;
+
+// Lets runtime code call Flux functions without knowing which engine
+// runs them. Both engines implement it; see Callers.
+public interface FunctionCaller {
+
+    // Calls a function, bound method, builtin or class with evaluated arguments
+    Object call(Object callee, List<Object> arguments);
+
+    // A caller with its own copy of the globals, for use on another thread
+    FunctionCaller fork();
+}
@@ -0,0 +1,48 @@
+package runtime;
+
+import lexer.Symbol;
+
+// What one property-access site found on the shapes it has seen: a field
+// slot, or else the class method for the name. Up to LIMIT shapes are
+// remembered (polymorphic); past that the site is megamorphic and asks the
+// shape on every access. Entries are built once per shape and name (see
+// Shape.entry), so neither kind of site allocates once warmed up.
+// Shapes and methods never change once created, so entries never need to
+// be invalidated. Entries are immutable and published whole, so a racing
+// update can only lose an entry, never expose a half-written one.
+public final class InlineCache {
+
+    private static final int LIMIT = 4;
+
+    private final Entry[] entries = new Entry[LIMIT];
+
+    public Entry lookup(Shape shape, Symbol name) {
+        Entry[] entries = this.entries;
+        for (int i = 0; i < LIMIT; i++) {
+            Entry entry = entries[i];
+            if (entry == null) break;
+            if (entry.shape == shape) return entry;
+        }
+
+        Entry entry = shape.entry(name);
+        for (int i = 0; i < LIMIT; i++) {
+            if (entries[i] == null) {
+                entries[i] = entry;
+                break;
+            }
+        }
+        return entry;
+    }
+
+    public static final class Entry {
+        final Shape shape;
+        public final int slot;             // field slot, or -1
+        public final FluxFunction method;  // method when there is no field, may be null
+
+        Entry(Shape shape, Symbol name) {
+            this.shape = shape;
+            this.slot = shape.slotOf(name);
+            this.method = slot < 0 ? shape.getKlass().findMethod(name) : null;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package runtime;
+
+// Limits shared by the execution engines
+public final class Limits {
+
+    // Deepest chain of active Flux calls; tail calls do not add to it.
+    // Override with -Dflux.maxCallDepth=N
+    public static final int MAX_CALL_DEPTH = Integer.getInteger("flux.maxCallDepth", 10_000);
+
+    // Java stack for the thread that runs a script, sized so the tree-walking
+    // interpreter reaches MAX_CALL_DEPTH before the JVM overflows
+    public static final long STACK_SIZE = Math.max(16L << 20, MAX_CALL_DEPTH * 4096L);
+
+    private Limits() {}
+}
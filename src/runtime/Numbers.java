@@ -0,0 +1,24 @@
+package runtime;
+
+// Numeric helpers shared by the interpreter and the VM
+public final class Numbers {
+
+    // Largest magnitude below which every integral double converts to long exactly
+    private static final double EXACT_LONG = 9007199254740992.0; // 2^53
+
+    private Numbers() {}
+
+    // Same result as `left % right`, but integral operands use the integer
+    // remainder instead of the much slower floating-point drem.
+    // copySign keeps the dividend's sign on zero results (-4 % 2 == -0.0).
+    public static double modulo(double left, double right) {
+        if (left > -EXACT_LONG && left < EXACT_LONG && right > -EXACT_LONG && right < EXACT_LONG) {
+            long l = (long) left;
+            long r = (long) right;
+            if (l == left && r == right && r != 0) {
+                return Math.copySign((double) (l % r), left);
+            }
+        }
+        return left % right;
+    }
+}
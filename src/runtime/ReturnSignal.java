@@ -1,9 +0,0 @@
-package runtime;
-
-public class ReturnSignal extends RuntimeException {
-    public final Object value;
-
-    public ReturnSignal(Object value) {
-        this.value = value;
-    }
-}
@@ -0,0 +1,69 @@
+package runtime;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lexer.Symbol;
+
+// Hidden class for FluxInstance: the field names an instance has, in slot
+// order. Instances of a class share its root shape; adding a field moves an
+// instance along a cached transition to the shape with one more slot, so
+// objects built the same way end up sharing one shape. Field names are
+// interned symbols, so slot lookups are keyed by symbol id.
+public final class Shape {
+
+    private final FluxClass klass;
+    private final Symbol[] names;
+    private final IntMap<Integer> slots;
+    private final Map<Symbol, Shape> transitions = new ConcurrentHashMap<>();
+
+    // Cache entries for this shape, one per name, shared by every site.
+    // Replaced whole on each addition so readers take no lock; a racing
+    // addition can only lose an entry, which is rebuilt on the next miss.
+    private volatile IntMap<InlineCache.Entry> entries = new IntMap<>();
+
+    // Root shape with the fields a class declares
+    Shape(FluxClass klass, Symbol[] names) {
+        this.klass = klass;
+        this.names = names;
+        this.slots = new IntMap<>(names.length);
+        for (int i = 0; i < names.length; i++) {
+            slots.put(names[i].id, i);
+        }
+    }
+
+    public FluxClass getKlass() {
+        return klass;
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    // Slot of a field, or -1 when instances of this shape do not have it
+    public int slotOf(Symbol name) {
+        Integer slot = slots.get(name.id);
+        return slot == null ? -1 : slot;
+    }
+
+    // What a property site finds for `name` on this shape; built once
+    InlineCache.Entry entry(Symbol name) {
+        InlineCache.Entry entry = entries.get(name.id);
+        if (entry == null) {
+            entry = new InlineCache.Entry(this, name);
+            IntMap<InlineCache.Entry> grown = new IntMap<>(entries);
+            grown.put(name.id, entry);
+            entries = grown;
+        }
+        return entry;
+    }
+
+    // Shape with `name` appended as the next slot
+    public Shape with(Symbol name) {
+        return transitions.computeIfAbsent(name, n -> {
+            Symbol[] next = Arrays.copyOf(names, names.length + 1);
+            next[names.length] = n;
+            return new Shape(klass, next);
+        });
+    }
+}
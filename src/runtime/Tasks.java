@@ -0,0 +1,212 @@
+package runtime;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads for `spawn` and `await`, shared by both execution engines.
+ *
+ * On Java 21 and later each task gets a virtual thread, so a script can
+ * start many thousands of them. Older JVMs fall back to a cached pool of
+ * daemon threads; it grows instead of queueing, so a task that awaits
+ * another task can never starve it of a thread.
+ *
+ * A task shares the globals of the code that spawned it, read-only: it
+ * gets its own table of the global bindings (see snapshot()), so an
+ * assignment on either side is not seen by the other, but the values are
+ * not copied. What a task is handed is: isolate() copies the arrays, maps
+ * and instances among the callee and its arguments, along with the
+ * receiver of a bound method and the local variables a closure has
+ * captured. Results come back through `await`, after the task has finished
+ * with them.
+ *
+ * A task that fails is never lost: `await` rethrows its error. A run does
+ * not end before the tasks it spawned, and reports the error of one that
+ * nothing awaited (see Scope).
+ */
+public final class Tasks {
+
+    private static final ExecutorService EXECUTOR = executor();
+
+    // Tasks spawned by one run of a script, including those spawned by its
+    // tasks. Counts the ones still running, and keeps the ones that failed
+    // until they are awaited.
+    public static final class Scope {
+        private final Set<FluxTask> unawaited = ConcurrentHashMap.newKeySet();
+        private int running; // guarded by this
+
+        synchronized void started() {
+            running++;
+        }
+
+        synchronized void finished() {
+            if (--running == 0) notifyAll();
+        }
+
+        // Called when the run ends: waits until every task has finished,
+        // awaited or not. A task starts its own tasks before it finishes,
+        // so the count cannot reach zero while any of them are left.
+        public synchronized void join() {
+            try {
+                while (running > 0) wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("[Flux Runtime Error]\nInterrupted while waiting for tasks.");
+            }
+        }
+
+        void failed(FluxTask task) {
+            unawaited.add(task);
+        }
+
+        void awaited(FluxTask task) {
+            unawaited.remove(task);
+        }
+
+        // Called after join(): throws the error of a task that failed and
+        // was never awaited. `exit` in a task is not an error.
+        public void check() {
+            for (FluxTask task : unawaited) {
+                unawaited.remove(task);
+                Throwable failure = task.failure();
+                if (failure == null || failure instanceof ExitSignal) continue;
+                throw new RuntimeException(
+                    "[Flux Runtime Error]\nA task failed and was never awaited:\n" + failure.getMessage(), failure);
+            }
+        }
+    }
+
+    // Runs `body` on a thread of its own
+    public static FluxTask start(Callable<Object> body, Scope scope) {
+        FluxTask task = new FluxTask(body, scope);
+        scope.started();
+        EXECUTOR.execute(task.body());
+        return task;
+    }
+
+    // Value of `await value`
+    public static Object await(Object value) {
+        if (!(value instanceof FluxTask)) {
+            throw new RuntimeException("[Flux Runtime Error]\nCan only await a task.");
+        }
+        return ((FluxTask) value).join();
+    }
+
+    // Copy of a value passed to a task. Arrays, maps and instances are copied
+    // all the way down (shared and cyclic references stay shared and cyclic
+    // within the copy). A function is copied when it is bound to an instance
+    // or has captured local variables; everything else is immutable and
+    // passed as is.
+    public static Object isolate(Object value) {
+        return immutable(value) ? value : isolate(value, new IdentityHashMap<>());
+    }
+
+    // Globals for an engine forked from one using `globals`: the same names
+    // bound to the same values. Only the binding table is copied, so this
+    // costs the same however large the arrays and maps the globals hold.
+    public static Environment snapshot(Environment globals) {
+        return new Environment(globals);
+    }
+
+    // Values passed as is: everything but arrays, maps, instances and the
+    // functions that are bound or captured local variables. A function
+    // that only reads globals is shared, like the globals themselves.
+    private static boolean immutable(Object value) {
+        if (value instanceof FluxFunction) {
+            FluxFunction function = (FluxFunction) value;
+            Environment closure = function.getClosure();
+            return function.getReceiver() == null && (closure == null || closure.getEnclosing() == null);
+        }
+        return !(value instanceof FluxArray || value instanceof Map || value instanceof FluxInstance);
+    }
+
+    private static Object isolate(Object value, Map<Object, Object> copies) {
+        if (immutable(value)) return value;
+        Object done = copies.get(value);
+        if (done != null) return done;
+
+        if (value instanceof FluxFunction) {
+            FluxFunction function = (FluxFunction) value;
+            Environment closure = function.getClosure();
+            FluxFunction copy = function.copy(
+                isolate(closure, copies),
+                (FluxInstance) isolate(function.getReceiver(), copies));
+            copies.put(value, copy);
+            return copy;
+        }
+
+        if (value instanceof FluxArray) {
+            FluxArray copy = ((FluxArray) value).copy();
+            copies.put(value, copy);
+            if (!copy.isNumeric()) {
+                for (int i = 0; i < copy.size(); i++) {
+                    copy.set(i, isolate(copy.get(i), copies));
+                }
+            }
+            return copy;
+        }
+
+        if (value instanceof Map) {
+            Map<Object, Object> copy = new HashMap<>();
+            copies.put(value, copy);
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(isolate(entry.getKey(), copies), isolate(entry.getValue(), copies));
+            }
+            return copy;
+        }
+
+        FluxInstance instance = (FluxInstance) value;
+        FluxInstance copy = instance.copy();
+        copies.put(value, copy);
+        for (int slot = 0; slot < copy.getShape().size(); slot++) {
+            copy.setField(slot, isolate(copy.getField(slot), copies));
+        }
+        return copy;
+    }
+
+    // Copy of the local frames a closure captured, up to the globals
+    private static Environment isolate(Environment frame, Map<Object, Object> copies) {
+        if (frame == null || frame.getEnclosing() == null) return frame;
+        Object done = copies.get(frame);
+        if (done != null) return (Environment) done;
+
+        Environment copy = new Environment(frame, isolate(frame.getEnclosing(), copies));
+        copies.put(frame, copy);
+        isolateSlots(copy, copies);
+        return copy;
+    }
+
+    private static void isolateSlots(Environment frame, Map<Object, Object> copies) {
+        for (int slot = 0; slot < frame.size(); slot++) {
+            Object value = frame.raw(slot);
+            Object copy = isolate(value, copies);
+            if (copy != value) frame.set(slot, copy);
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() is looked up at run time
+    // so the interpreter still builds and runs on Java 17
+    private static ExecutorService executor() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor")
+                .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(null, task, "flux-task-" + count.incrementAndGet(), Limits.STACK_SIZE);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private Tasks() {}
+}
@@ -0,0 +1,21 @@
+package vm;
+
+import compiler.Prototype;
+import runtime.Environment;
+import runtime.FluxInstance;
+
+// One active function call inside the VM
+class CallFrame {
+    final Prototype prototype;
+    final Environment environment;
+    final int base;                 // stack index of the callee, reset to on return
+    final FluxInstance constructed; // set when running init(): returned instead of the result
+    int ip = 0;
+
+    CallFrame(Prototype prototype, Environment environment, int base, FluxInstance constructed) {
+        this.prototype = prototype;
+        this.environment = environment;
+        this.base = base;
+        this.constructed = constructed;
+    }
+}
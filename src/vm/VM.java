@@ -0,0 +1,769 @@
+package vm;
+
+import compiler.ClassPrototype;
+import compiler.OpCode;
+import compiler.Prototype;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lexer.Token;
+import runtime.BuiltinFunction;
+import runtime.Builtins;
+import runtime.Callers;
+import runtime.Environment;
+import runtime.ExitSignal;
+import runtime.FluxArray;
+import runtime.FluxClass;
+import runtime.FluxFunction;
+import runtime.FluxInstance;
+import runtime.FluxIterator;
+import runtime.FluxString;
+import runtime.FluxTask;
+import runtime.FunctionCaller;
+import runtime.InlineCache;
+import runtime.IntMap;
+import runtime.Limits;
+import runtime.Numbers;
+import runtime.Tasks;
+
+/**
+ * Stack-based virtual machine for compiled Flux programs.
+ *
+ * Flux calls push a CallFrame instead of recursing in Java, so one loop
+ * runs the whole program. Frames still use runtime.Environment for their
+ * locals so closures can capture them exactly like in the tree-walking
+ * interpreter, and all runtime values are shared with it.
+ *
+ * Numbers travel unboxed: a stack slot holding Environment.NUMBER keeps its
+ * value in the parallel `numbers` lane, and frames store them the same way.
+ * A Double is only allocated when a number leaves the VM (builtins, arrays,
+ * fields, printing).
+ */
+public class VM implements FunctionCaller {
+
+    private final Environment globals;
+    private PrintStream out = System.out;
+
+    private static final Object NUMBER = Environment.NUMBER;
+
+    private Object[] stack = new Object[256];
+    private double[] numbers = new double[256];
+    private int sp = 0;
+
+    private CallFrame[] frames = new CallFrame[64];
+    private int frameCount = 0;
+    private int maxCallDepth = Limits.MAX_CALL_DEPTH;
+    private Tasks.Scope tasks = new Tasks.Scope(); // shared with forks
+
+    public VM() {
+        this(new Environment());
+        Builtins.define(globals);
+    }
+
+    // Runs against globals prepared by the caller (see engine.FluxContext)
+    public VM(Environment globals) {
+        this.globals = globals;
+    }
+
+    public Environment getGlobals() {
+        return globals;
+    }
+
+    public void setMaxCallDepth(int maxCallDepth) {
+        this.maxCallDepth = maxCallDepth;
+    }
+
+    // Makes the VM ready for another run after one that failed part way
+    public void reset() {
+        Arrays.fill(stack, 0, sp, null);
+        Arrays.fill(frames, 0, frameCount, null);
+        sp = 0;
+        frameCount = 0;
+    }
+
+    // Where print statements write; System.out by default
+    public void setOutput(PrintStream out) {
+        this.out = out;
+    }
+
+    public void run(Prototype script) {
+        FunctionCaller previous = Callers.enter(this);
+        try {
+            pushFrame(script, globals, sp, null);
+            execute(0);
+            stack[sp] = null; // the script's result is not used
+        } finally {
+            Callers.exit(previous);
+        }
+        // The run ends with the last task it spawned
+        tasks.join();
+        tasks.check();
+    }
+
+    // ===================== DISPATCH LOOP =====================
+
+    // Runs until the frame count drops back to `stopAt`
+    private void execute(int stopAt) {
+        CallFrame frame = frames[frameCount - 1];
+        int[] code = frame.prototype.chunk.code;
+        Object[] constants = frame.prototype.chunk.constants;
+        Environment env = frame.environment;
+        Object[] stack = this.stack;
+        double[] numbers = this.numbers;
+        int sp = this.sp;
+        int ip = frame.ip;
+
+        while (true) {
+            switch (code[ip++]) {
+
+                case OpCode.CONST -> stack[sp++] = constants[code[ip++]]; // pooled box, no allocation
+                case OpCode.STRING -> stack[sp++] = new FluxString((String) constants[code[ip++]]);
+                case OpCode.NULL -> stack[sp++] = null;
+                case OpCode.TRUE -> stack[sp++] = Boolean.TRUE;
+                case OpCode.FALSE -> stack[sp++] = Boolean.FALSE;
+
+                case OpCode.LOAD_LOCAL -> {
+                    load(env, code[ip++], env, (String) constants[code[ip++]], stack, numbers, sp);
+                    sp++;
+                }
+                case OpCode.STORE_LOCAL -> {
+                    sp--;
+                    store(env, code[ip++], stack, numbers, sp);
+                }
+                case OpCode.LOAD_OUTER -> {
+                    Environment outer = env.ancestor(code[ip++]);
+                    load(outer, code[ip++], env, (String) constants[code[ip++]], stack, numbers, sp);
+                    sp++;
+                }
+                case OpCode.STORE_OUTER -> {
+                    Environment outer = env.ancestor(code[ip++]);
+                    sp--;
+                    store(outer, code[ip++], stack, numbers, sp);
+                }
+                case OpCode.LOAD_GLOBAL -> {
+                    load(globals, code[ip++], globals, (String) constants[code[ip++]], stack, numbers, sp);
+                    sp++;
+                }
+                case OpCode.STORE_GLOBAL -> {
+                    sp--;
+                    store(globals, code[ip++], stack, numbers, sp);
+                }
+                case OpCode.LOAD_NAME -> stack[sp++] = env.get((String) constants[code[ip++]]);
+                case OpCode.STORE_NAME -> {
+                    sp--;
+                    env.define((String) constants[code[ip++]], value(stack, numbers, sp));
+                }
+
+                case OpCode.ADD -> {
+                    int r = --sp;
+                    int l = sp - 1;
+                    if (isNumber(stack[l]) && isNumber(stack[r])) {
+                        numbers[l] = number(stack, numbers, l) + number(stack, numbers, r);
+                        stack[l] = NUMBER;
+                    } else {
+                        Object right = value(stack, numbers, r);
+                        Object left = value(stack, numbers, l);
+                        if ((left instanceof Double || left == null) && right instanceof Double) {
+                            numbers[l] = number(left) + (double) right;
+                            stack[l] = NUMBER;
+                        } else {
+                            stack[l] = concat(left, right);
+                        }
+                    }
+                }
+                case OpCode.SUBTRACT -> {
+                    sp--;
+                    checkNumberOperands(stack, sp - 1, sp);
+                    numbers[sp - 1] = number(stack, numbers, sp - 1) - number(stack, numbers, sp);
+                    stack[sp - 1] = NUMBER;
+                }
+                case OpCode.MULTIPLY -> {
+                    sp--;
+                    checkNumberOperands(stack, sp - 1, sp);
+                    numbers[sp - 1] = number(stack, numbers, sp - 1) * number(stack, numbers, sp);
+                    stack[sp - 1] = NUMBER;
+                }
+                case OpCode.DIVIDE -> {
+                    sp--;
+                    checkNumberOperands(stack, sp - 1, sp);
+                    numbers[sp - 1] = number(stack, numbers, sp - 1) / number(stack, numbers, sp);
+                    stack[sp - 1] = NUMBER;
+                }
+                case OpCode.MODULO -> {
+                    sp--;
+                    checkNumberOperands(stack, sp - 1, sp);
+                    numbers[sp - 1] = Numbers.modulo(number(stack, numbers, sp - 1), number(stack, numbers, sp));
+                    stack[sp - 1] = NUMBER;
+                }
+                case OpCode.GREATER -> {
+                    sp--;
+                    stack[sp - 1] = number(stack, numbers, sp - 1) > number(stack, numbers, sp);
+                }
+                case OpCode.GREATER_EQUAL -> {
+                    sp--;
+                    stack[sp - 1] = number(stack, numbers, sp - 1) >= number(stack, numbers, sp);
+                }
+                case OpCode.LESS -> {
+                    sp--;
+                    stack[sp - 1] = number(stack, numbers, sp - 1) < number(stack, numbers, sp);
+                }
+                case OpCode.LESS_EQUAL -> {
+                    sp--;
+                    stack[sp - 1] = number(stack, numbers, sp - 1) <= number(stack, numbers, sp);
+                }
+                case OpCode.EQUAL -> {
+                    sp--;
+                    stack[sp - 1] = isEqual(stack, numbers, sp - 1, sp);
+                }
+                case OpCode.NOT_EQUAL -> {
+                    sp--;
+                    stack[sp - 1] = !isEqual(stack, numbers, sp - 1, sp);
+                }
+                case OpCode.NOT -> stack[sp - 1] = !isTruthy(stack, numbers, sp - 1);
+                case OpCode.TO_BOOLEAN -> stack[sp - 1] = isTruthy(stack, numbers, sp - 1);
+
+                case OpCode.JUMP -> ip = code[ip];
+                case OpCode.JUMP_IF_FALSE -> {
+                    if (isTruthy(stack, numbers, --sp)) {
+                        ip++;
+                    } else {
+                        ip = code[ip];
+                    }
+                }
+                case OpCode.FOR_PREP -> {
+                    if (!isNumber(stack[sp - 2]) || !isNumber(stack[sp - 1])) {
+                        throw runtimeError("For loop bounds must be numbers.");
+                    }
+                    // [start, end] → [end, start]: the end stays behind for FOR_TEST and FOR_STEP
+                    Object start = stack[sp - 2];
+                    double startNumber = numbers[sp - 2];
+                    stack[sp - 2] = stack[sp - 1];
+                    numbers[sp - 2] = numbers[sp - 1];
+                    stack[sp - 1] = start;
+                    numbers[sp - 1] = startNumber;
+                }
+                case OpCode.FOR_TEST -> {
+                    sp--;
+                    if (!isNumber(stack[sp])) {
+                        throw runtimeError("For loop variable must be a number.");
+                    }
+                    if (number(stack, numbers, sp) <= number(stack, numbers, sp - 1)) {
+                        ip++;
+                    } else {
+                        ip = code[ip];
+                    }
+                    stack[sp] = null;
+                }
+                case OpCode.FOR_STEP -> {
+                    int slot = code[ip++];
+                    Object current = env.raw(slot);
+                    double next = (current == NUMBER ? env.number(slot) : (double) current) + 1;
+                    env.setNumber(slot, next);
+                    if (next <= number(stack, numbers, sp - 1)) {
+                        ip = code[ip];
+                    } else {
+                        ip++;
+                    }
+                }
+                case OpCode.ITER -> stack[sp - 1] = FluxIterator.of(value(stack, numbers, sp - 1));
+                case OpCode.ITER_NEXT -> {
+                    FluxIterator elements = (FluxIterator) stack[sp - 1];
+                    if (!elements.hasNext()) {
+                        ip = code[ip];
+                    } else {
+                        ip++;
+                        if (elements.isNumeric()) {
+                            numbers[sp] = elements.nextNumber();
+                            stack[sp++] = NUMBER;
+                        } else {
+                            stack[sp++] = elements.next();
+                        }
+                    }
+                }
+                case OpCode.POP -> stack[--sp] = null;
+                case OpCode.PRINT -> {
+                    int n = code[ip++];
+                    StringBuilder output = new StringBuilder();
+                    for (int i = sp - n; i < sp; i++) {
+                        output.append(stringify(value(stack, numbers, i))).append(" ");
+                        stack[i] = null;
+                    }
+                    sp -= n;
+                    out.println(output.toString().trim());
+                }
+                case OpCode.TO_STRING -> stack[sp - 1] = stringify(value(stack, numbers, sp - 1));
+                case OpCode.EXIT -> throw new ExitSignal();
+
+                case OpCode.ARRAY -> {
+                    int n = code[ip++];
+                    List<Object> values = new ArrayList<>(n);
+                    for (int i = sp - n; i < sp; i++) {
+                        values.add(value(stack, numbers, i));
+                    }
+                    sp -= n;
+                    stack[sp++] = new FluxArray(values);
+                }
+                case OpCode.MAP -> {
+                    int n = code[ip++];
+                    Map<Object, Object> map = new HashMap<>();
+                    for (int i = sp - 2 * n; i < sp; i += 2) {
+                        Object key = value(stack, numbers, i);
+                        if (key instanceof FluxString) {
+                            key = ((FluxString) key).getValue();
+                        }
+                        map.put(key, value(stack, numbers, i + 1));
+                    }
+                    sp -= 2 * n;
+                    stack[sp++] = map;
+                }
+                case OpCode.INDEX -> {
+                    Object array = stack[sp - 2];
+                    if (stack[sp - 1] == NUMBER && array instanceof FluxArray && ((FluxArray) array).isNumeric()) {
+                        // Numeric arrays hand their elements over unboxed
+                        sp--;
+                        numbers[sp - 1] = ((FluxArray) array).number((int) numbers[sp]);
+                        stack[sp - 1] = NUMBER;
+                    } else {
+                        Object index = value(stack, numbers, --sp);
+                        stack[sp - 1] = index(stack[sp - 1], index);
+                    }
+                }
+                case OpCode.GET_PROPERTY -> {
+                    Token name = (Token) constants[code[ip++]];
+                    InlineCache cache = (InlineCache) constants[code[ip++]];
+                    stack[sp - 1] = getProperty(stack[sp - 1], name, cache);
+                }
+                case OpCode.SET_PROPERTY -> {
+                    Token name = (Token) constants[code[ip++]];
+                    InlineCache cache = (InlineCache) constants[code[ip++]];
+                    Object value = value(stack, numbers, --sp);
+                    Object object = stack[sp - 1];
+                    if (!(object instanceof FluxInstance)) {
+                        throw runtimeError("Only instances have fields.");
+                    }
+                    FluxInstance instance = (FluxInstance) object;
+                    InlineCache.Entry entry = cache.lookup(instance.getShape(), name.symbol);
+                    if (entry.slot >= 0) {
+                        instance.setField(entry.slot, value);
+                    } else {
+                        instance.set(name, value);
+                    }
+                    stack[sp - 1] = value;
+                }
+
+                case OpCode.CLOSURE -> stack[sp++] = new FluxFunction((Prototype) constants[code[ip++]], env);
+                case OpCode.CLASS -> stack[sp++] = createClass((ClassPrototype) constants[code[ip++]], env);
+
+                case OpCode.CALL, OpCode.TAIL_CALL -> {
+                    boolean tail = code[ip - 1] == OpCode.TAIL_CALL;
+                    int argc = code[ip++];
+                    int base = sp - argc - 1;
+                    frame.ip = ip;
+                    CallFrame callee = call(stack[base], null, base, argc, sp, tail);
+                    if (callee == null) {
+                        sp = base + 1; // result already in stack[base]
+                        stack = this.stack; // a builtin that called back may have grown it
+                        numbers = this.numbers;
+                    } else {
+                        sp = callee.base;
+                        frame = callee;
+                        stack = this.stack;
+                        numbers = this.numbers;
+                        code = frame.prototype.chunk.code;
+                        constants = frame.prototype.chunk.constants;
+                        env = frame.environment;
+                        ip = 0;
+                    }
+                }
+                case OpCode.INVOKE, OpCode.TAIL_INVOKE -> {
+                    boolean tail = code[ip - 1] == OpCode.TAIL_INVOKE;
+                    Token name = (Token) constants[code[ip++]];
+                    InlineCache cache = (InlineCache) constants[code[ip++]];
+                    int argc = code[ip++];
+                    int base = sp - argc - 1;
+                    Object object = stack[base];
+
+                    // Builtin string/array methods run in place
+                    if (object instanceof FluxString || object instanceof FluxArray) {
+                        this.sp = sp;
+                        Object result = invokeBuiltin(object, name, base, argc);
+                        stack = this.stack;
+                        numbers = this.numbers;
+                        Arrays.fill(stack, base, sp, null);
+                        sp = base;
+                        stack[sp++] = result;
+                        continue;
+                    }
+
+                    // Methods are called with `this` set directly, without binding
+                    Object callee;
+                    FluxInstance receiver = null;
+                    if (object instanceof FluxInstance) {
+                        FluxInstance instance = (FluxInstance) object;
+                        InlineCache.Entry entry = cache.lookup(instance.getShape(), name.symbol);
+                        if (entry.slot >= 0) {
+                            callee = instance.getField(entry.slot);
+                        } else if (entry.method != null) {
+                            callee = entry.method;
+                            receiver = instance;
+                        } else {
+                            throw runtimeError("Undefined property '" + name.lexeme() + "'.");
+                        }
+                    } else {
+                        callee = getProperty(object, name, cache);
+                    }
+
+                    frame.ip = ip;
+                    CallFrame next = call(callee, receiver, base, argc, sp, tail);
+                    if (next == null) {
+                        sp = base + 1;
+                        stack = this.stack;
+                        numbers = this.numbers;
+                    } else {
+                        sp = next.base;
+                        frame = next;
+                        stack = this.stack;
+                        numbers = this.numbers;
+                        code = frame.prototype.chunk.code;
+                        constants = frame.prototype.chunk.constants;
+                        env = frame.environment;
+                        ip = 0;
+                    }
+                }
+
+                case OpCode.SPAWN -> {
+                    int argc = code[ip++];
+                    int base = sp - argc - 1;
+                    Object callee = stack[base];
+                    List<Object> args = new ArrayList<>(argc);
+                    for (int i = 0; i < argc; i++) {
+                        args.add(value(stack, numbers, base + 1 + i));
+                    }
+                    Arrays.fill(stack, base, sp, null);
+                    sp = base;
+                    stack[sp++] = spawn(callee, args);
+                }
+                case OpCode.AWAIT -> stack[sp - 1] = Tasks.await(value(stack, numbers, sp - 1));
+                case OpCode.ISOLATE -> stack[sp - 1] = Tasks.isolate(stack[sp - 1]);
+
+                case OpCode.RETURN -> {
+                    Object result = stack[--sp];
+                    double number = numbers[sp];
+                    if (frame.constructed != null) {
+                        result = frame.constructed;
+                    }
+                    Arrays.fill(stack, frame.base, sp, null);
+                    sp = frame.base;
+                    frames[--frameCount] = null;
+
+                    if (frameCount == stopAt) {
+                        // Left just above the stack for whoever started this run
+                        numbers[sp] = number;
+                        stack[sp] = result;
+                        this.sp = sp;
+                        return;
+                    }
+
+                    numbers[sp] = number;
+                    stack[sp++] = result;
+                    frame = frames[frameCount - 1];
+                    code = frame.prototype.chunk.code;
+                    constants = frame.prototype.chunk.constants;
+                    env = frame.environment;
+                    ip = frame.ip;
+                }
+
+                default -> throw runtimeError("Unknown opcode " + code[ip - 1] + ".");
+            }
+        }
+    }
+
+    // ===================== FRAMES =====================
+
+    private CallFrame pushFrame(Prototype prototype, Environment environment, int base, FluxInstance constructed) {
+        // frames[0] is the script itself
+        if (frameCount > maxCallDepth) {
+            throw runtimeError("Stack overflow: more than " + maxCallDepth + " nested calls.");
+        }
+        if (frameCount == frames.length) {
+            frames = Arrays.copyOf(frames, frames.length * 2);
+        }
+
+        int needed = base + prototype.chunk.maxStack + 1;
+        if (needed > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(stack.length * 2, needed));
+            numbers = Arrays.copyOf(numbers, stack.length);
+        }
+
+        CallFrame frame = new CallFrame(prototype, environment, base, constructed);
+        frames[frameCount++] = frame;
+        return frame;
+    }
+
+    // Calls `callee` with the argc arguments above stack[base]. Returns the
+    // new frame for Flux code, or null when the result is already in stack[base].
+    // A tail call to Flux code replaces the current frame instead of stacking on it.
+    private CallFrame call(Object callee, FluxInstance receiver, int base, int argc, int sp, boolean tail) {
+        Object[] stack = this.stack;
+        double[] numbers = this.numbers;
+
+        if (callee instanceof FluxFunction) {
+            FluxFunction function = (FluxFunction) callee;
+            if (receiver == null) {
+                receiver = function.getReceiver();
+            }
+            if (argc != function.getParams().size()) {
+                throw runtimeError(
+                    "Expected " + function.getParams().size() +
+                    " arguments but got " + argc + "."
+                );
+            }
+
+            Environment frameEnv = function.newFrame(receiver);
+            int firstSlot = function.firstParamSlot(receiver);
+            // Arguments are boxed: a number lane per short call costs more than it saves
+            for (int i = 0; i < argc; i++) {
+                frameEnv.set(firstSlot + i, value(stack, numbers, base + 1 + i));
+            }
+            Arrays.fill(stack, base, sp, null);
+
+            if (tail && frames[frameCount - 1].constructed == null) {
+                CallFrame current = frames[frameCount - 1];
+                Arrays.fill(stack, current.base, base, null);
+                frames[--frameCount] = null;
+                base = current.base;
+            }
+            return pushFrame(function.getPrototype(), frameEnv, base, null);
+        }
+
+        if (callee instanceof BuiltinFunction) {
+            List<Object> args = new ArrayList<>(argc);
+            for (int i = 0; i < argc; i++) {
+                args.add(value(stack, numbers, base + 1 + i));
+            }
+            Arrays.fill(stack, base, sp, null);
+            // Builtins may call back into Flux code above the arguments
+            this.sp = sp;
+            Object result = ((BuiltinFunction) callee).call(args);
+            this.stack[base] = result;
+            return null;
+        }
+
+        if (callee instanceof FluxClass) {
+            // Constructor arguments are not passed to init()
+            FluxClass klass = (FluxClass) callee;
+            FluxInstance instance = klass.instantiate();
+            Arrays.fill(stack, base, sp, null);
+
+            FluxFunction init = klass.initializer();
+            if (init == null) {
+                stack[base] = instance;
+                return null;
+            }
+            Environment frameEnv = init.newFrame(instance);
+            return pushFrame(init.getPrototype(), frameEnv, base, instance);
+        }
+
+        throw runtimeError("Can only call functions and classes.");
+    }
+
+    // Runs a builtin string/array method on the receiver in stack[base]
+    private Object invokeBuiltin(Object receiver, Token name, int base, int argc) {
+        Object first = argc > 0 ? value(stack, numbers, base + 1) : null;
+        Object second = argc > 1 ? value(stack, numbers, base + 2) : null;
+
+        if (receiver instanceof FluxString) {
+            return FluxString.method(name.symbol).invoke((FluxString) receiver, argc, first, second);
+        }
+        return FluxArray.method(name.symbol).invoke((FluxArray) receiver, argc, first, second);
+    }
+
+    private FluxClass createClass(ClassPrototype prototype, Environment closure) {
+        IntMap<FluxFunction> methods = new IntMap<>(prototype.methods.size());
+        for (Prototype method : prototype.methods) {
+            methods.put(method.name.symbol.id, new FluxFunction(method, closure));
+        }
+        return new FluxClass(prototype.name.lexeme(), prototype.fields, methods);
+    }
+
+    // ===================== TASKS =====================
+
+    // Starts callee(args) on a VM of its own, over a snapshot of the globals
+    private FluxTask spawn(Object callee, List<Object> args) {
+        FunctionCaller task = fork();
+        return Tasks.start(() -> Callers.call(task, callee, args), tasks);
+    }
+
+    @Override
+    public FunctionCaller fork() {
+        VM vm = new VM(Tasks.snapshot(globals));
+        vm.maxCallDepth = maxCallDepth;
+        vm.out = out;
+        vm.tasks = tasks;
+        return vm;
+    }
+
+    // Runs callee(args) to completion above whatever is on the stack and
+    // yields the result: the body of a task, or a callback from a builtin
+    @Override
+    public Object call(Object callee, List<Object> args) {
+        int base = sp;
+        int argc = args.size();
+        if (base + argc >= stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(stack.length * 2, base + argc + 1));
+            numbers = Arrays.copyOf(numbers, stack.length);
+        }
+        stack[base] = callee;
+        for (int i = 0; i < argc; i++) {
+            stack[base + 1 + i] = args.get(i);
+        }
+
+        if (call(callee, null, base, argc, base + argc + 1, false) != null) {
+            execute(frameCount - 1);
+        }
+        Object result = value(stack, numbers, base);
+        stack[base] = null;
+        sp = base;
+        return result;
+    }
+
+    // ===================== OBJECTS =====================
+
+    private Object getProperty(Object object, Token name, InlineCache cache) {
+        if (object instanceof FluxInstance) {
+            FluxInstance instance = (FluxInstance) object;
+            InlineCache.Entry entry = cache.lookup(instance.getShape(), name.symbol);
+            if (entry.slot >= 0) {
+                return instance.getField(entry.slot);
+            }
+            if (entry.method == null) {
+                throw runtimeError("Undefined property '" + name.lexeme() + "'.");
+            }
+            return entry.method.bind(instance);
+        } else if (object instanceof FluxString) {
+            return ((FluxString) object).get(name);
+        } else if (object instanceof FluxArray) {
+            return ((FluxArray) object).get(name);
+        }
+        throw runtimeError("Only instances, strings, and arrays have properties.");
+    }
+
+    private Object index(Object arrayObj, Object indexObj) {
+        if (arrayObj instanceof FluxArray) {
+            return ((FluxArray) arrayObj).get(((Double) indexObj).intValue());
+        } else if (arrayObj instanceof List) {
+            int idx = ((Double) indexObj).intValue();
+            List<?> list = (List<?>) arrayObj;
+            if (idx < 0 || idx >= list.size()) {
+                throw new RuntimeException("Runtime Error: Array index out of bounds.");
+            }
+            return list.get(idx);
+        } else if (arrayObj instanceof Map) {
+            Object key = indexObj;
+            if (key instanceof FluxString) {
+                key = ((FluxString) key).getValue();
+            }
+            return ((Map<?, ?>) arrayObj).get(key);
+        }
+        throw runtimeError("Tried to index a non-array, non-map value.");
+    }
+
+    // ===================== NUMBER LANE =====================
+
+    // Boxes a stack slot for code outside the VM
+    private static Object value(Object[] stack, double[] numbers, int i) {
+        Object value = stack[i];
+        return value == NUMBER ? (Object) numbers[i] : value;
+    }
+
+    private static boolean isNumber(Object value) {
+        return value == NUMBER || value instanceof Double;
+    }
+
+    private static double number(Object[] stack, double[] numbers, int i) {
+        Object value = stack[i];
+        return value == NUMBER ? numbers[i] : number(value);
+    }
+
+    // Pushes a variable onto stack[top]; unassigned slots fall back to a by-name walk
+    private static void load(Environment frame, int slot, Environment scope, String name,
+                             Object[] stack, double[] numbers, int top) {
+        Object value = frame.raw(slot);
+        if (value == NUMBER) {
+            numbers[top] = frame.number(slot);
+        } else if (value == Environment.UNDEFINED) {
+            value = scope.get(name);
+        }
+        stack[top] = value;
+    }
+
+    private static void store(Environment frame, int slot, Object[] stack, double[] numbers, int i) {
+        Object value = stack[i];
+        if (value == NUMBER) {
+            frame.setNumber(slot, numbers[i]);
+        } else {
+            frame.set(slot, value);
+        }
+    }
+
+    // ===================== HELPERS =====================
+
+    private static double number(Object value) {
+        return value == null ? 0.0 : (double) value;
+    }
+
+    // Numbers compare like Double.equals(): NaN equals itself, 0.0 differs from -0.0
+    private static boolean isEqual(Object[] stack, double[] numbers, int left, int right) {
+        if (isNumber(stack[left]) && isNumber(stack[right])) {
+            return Double.doubleToLongBits(number(stack, numbers, left))
+                == Double.doubleToLongBits(number(stack, numbers, right));
+        }
+        return isEqual(value(stack, numbers, left), value(stack, numbers, right));
+    }
+
+    private static boolean isEqual(Object left, Object right) {
+        if (left == null) return right == null;
+        if (right == null) return false;
+        return left.equals(right);
+    }
+
+    private static boolean isTruthy(Object[] stack, double[] numbers, int i) {
+        Object value = stack[i];
+        return value == NUMBER ? numbers[i] != 0 : isTruthy(value);
+    }
+
+    private static boolean isTruthy(Object value) {
+        if (value == null) return false;
+        if (value instanceof Boolean) return (boolean) value;
+        if (value instanceof Double) return (double) value != 0;
+        return true;
+    }
+
+    private static String stringify(Object value) {
+        if (value == null) return "null";
+        if (value instanceof FluxFunction) return "<function>";
+        return value.toString();
+    }
+
+    // `left + right` when it is not a number addition
+    private static FluxString concat(Object left, Object right) {
+        FluxString prefix = left instanceof FluxString ? (FluxString) left : new FluxString(stringify(left));
+        return prefix.concat(stringify(right));
+    }
+
+    private static void checkNumberOperands(Object[] stack, int left, int right) {
+        if (isNumeric(stack[left]) && isNumeric(stack[right])) return;
+        throw new RuntimeException("Runtime Error: Operands must be numbers.");
+    }
+
+    private static boolean isNumeric(Object value) {
+        return value == NUMBER || value instanceof Double || value == null;
+    }
+
+    private static RuntimeException runtimeError(String message) {
+        return new RuntimeException("[Flux Runtime Error]\n" + message);
+    }
+}